@@ -0,0 +1,218 @@
+/*
+ * -----------------
+ * CompartmentModelCli.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Take the default model from TwoCompartmentInsulin;
+ *
+ */
+package cli;
+
+import cohort.CohortCoordinator;
+import cohort.ShardWorker;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Locale;
+import model.InputSeries;
+import model.InsulinParameter;
+import model.Trajectory;
+import model.TwoCompartmentInsulin;
+import service.SimulationServer;
+
+/**
+ * launches the model without a user interface. unlike the applications in
+ * <code>compartmentmodelapp</code> the launcher loads no JavaFX or chart classes,
+ * so it starts quickly and can be run from a class data sharing archive:
+ * <pre>
+ * java cli.CompartmentModelCli simulate [--duration s] [--step s] [--interval s] [--start millis]
+ *                                       [--set parameter=value]... [--infusion t:rate,...] [--bolus t:amount,...]
+ * java cli.CompartmentModelCli serve [port [address]]
+ * java cli.CompartmentModelCli cohort job.properties spool shards workers [merged.bin]
+ * java cli.CompartmentModelCli worker ...
+ * </pre>
+ * simulate writes the trajectory of the demonstration model as CSV to standard
+ * output, with the time in seconds since the start; times given to the options are
+ * seconds since the start as well
+ * @since 1.0
+ */
+public class CompartmentModelCli {
+
+    private CompartmentModelCli() {
+    }
+
+
+    /**
+     * evaluates the model for the options of the simulate command
+     * @param args the options
+     * @return the trajectory
+     * @throws IllegalArgumentException if an option is not valid
+     */
+    public static Trajectory simulate(String... args) {
+        TwoCompartmentInsulin model = TwoCompartmentInsulin.defaultModel();
+        long start = 0;
+        int duration = 3600;
+        int step = 15;
+        int interval = 0;
+        String infusion = "";
+        String bolus = "";
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + option + ".");
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--start":
+                    start = Long.parseLong(value);
+                    break;
+                case "--duration":
+                    duration = Integer.parseInt(value);
+                    break;
+                case "--step":
+                    step = Integer.parseInt(value);
+                    break;
+                case "--interval":
+                    interval = Integer.parseInt(value);
+                    break;
+                case "--set":
+                    int equals = value.indexOf('=');
+                    if (equals < 0) {
+                        throw new IllegalArgumentException("The parameter must be given as name=value.");
+                    }
+                    InsulinParameter parameter = InsulinParameter.valueOf(value.substring(0, equals).trim().toUpperCase(Locale.ROOT));
+                    parameter.set(model, Double.parseDouble(value.substring(equals + 1)));
+                    break;
+                case "--infusion":
+                    infusion = value;
+                    break;
+                case "--bolus":
+                    bolus = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option + ".");
+            }
+        }
+        if (step < 1 || duration < step || interval < 0) {
+            throw new IllegalArgumentException("The step must be positive and not longer than the duration.");
+        }
+
+        model.setDeltat(step);
+        model.setTimeperiod(start, start + duration * 1000L);
+
+        double[][] rates = pairs(infusion, start);
+        long[] times = new long[rates.length];
+        double[] values = new double[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            times[i] = (long) rates[i][0];
+            values[i] = rates[i][1];
+        }
+        model.setRxiSchedule(new InputSeries(model.getRxiKey(), times, values));
+        for (double[] amount : pairs(bolus, start)) {
+            model.addBolus(Instant.ofEpochMilli((long) amount[0]), amount[1]);
+        }
+
+        return (interval == 0) ? model.solve() : model.solve(Duration.ofSeconds(interval), new Trajectory());
+    }
+
+    /**
+     * @param list a list of time:value pairs, time in seconds since the start
+     * @param start the start in milliseconds since the epoch
+     * @return the pairs, time in milliseconds since the epoch
+     */
+    private static double[][] pairs(String list, long start) {
+        String[] items = list.trim().isEmpty() ? new String[0] : list.split(",");
+        double[][] result = new double[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            String[] pair = items[i].trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected a list of time:value pairs, not " + list + ".");
+            }
+            result[i] = new double[] {start + Math.round(Double.parseDouble(pair[0]) * 1000), Double.parseDouble(pair[1])};
+        }
+        return result;
+    }
+
+    /**
+     * writes a trajectory as CSV, the time in seconds since the first time point
+     * @param trajectory the trajectory
+     * @param out the output
+     * @throws IOException if the output cannot be written
+     */
+    public static void writeCsv(Trajectory trajectory, Writer out) throws IOException {
+        out.write("time");
+        for (int s = 0; s < trajectory.getSeriesCount(); s++) {
+            out.write(',');
+            out.write(String.valueOf(trajectory.getKey(s)));
+        }
+        out.write('\n');
+        long first = (trajectory.size() > 0) ? trajectory.getTime(0) : 0;
+        for (int i = 0; i < trajectory.size(); i++) {
+            out.write(Double.toString((trajectory.getTime(i) - first) / 1000.0));
+            for (int s = 0; s < trajectory.getSeriesCount(); s++) {
+                out.write(',');
+                out.write(Double.toString(trajectory.getValue(s, i)));
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: CompartmentModelCli simulate [--duration s] [--step s] [--interval s] [--start millis]");
+        System.err.println("                                    [--set parameter=value]... [--infusion t:rate,...] [--bolus t:amount,...]");
+        System.err.println("       CompartmentModelCli serve [port [address]]");
+        System.err.println("       CompartmentModelCli cohort job.properties spool shards workers [merged.bin]");
+        System.err.println("       CompartmentModelCli worker --spool dir [--threads n] [--id worker]");
+        System.exit(2);
+    }
+
+    /**
+     * runs a command
+     * @param args the command and its arguments
+     * @throws Exception if the command fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "simulate":
+                Trajectory trajectory;
+                try {
+                    trajectory = simulate(rest);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    usage();
+                    return;
+                }
+                writeCsv(trajectory, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+                break;
+            case "serve":
+                SimulationServer.main(rest);
+                break;
+            case "cohort":
+                CohortCoordinator.main(rest);
+                break;
+            case "worker":
+                ShardWorker.main(rest);
+                break;
+            default:
+                usage();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * -----------------
+ * CohortCoordinator.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Claim timeout since the last heartbeat, check the shards before merging;
+ *
+ */
+package cohort;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * runs a cohort job in several processes: the members are split into shards in a
+ * {@link Spool}, local {@link ShardWorker} processes are started on the spool, and
+ * workers on other machines may join by running on the same directory. when all
+ * shards are done their results are merged in the order of the members into one
+ * {@link CohortResultFile} and a {@link CohortSummary}.
+ * <p>
+ * each member is evaluated the same way in any shard, and the merge adds the members
+ * in their order, so the merged results and statistics are the same to the bit for
+ * any number of shards and workers.
+ * <p>
+ * the shards of a local worker which exits before finishing them, and shards whose
+ * worker has not touched the claim for longer than the claim timeout, e.g. a remote
+ * worker which failed, are
+ * returned to the pending shards; local workers are started again while shards are
+ * pending
+ * <pre>
+ * java cohort.CohortCoordinator job.properties spool shards workers [merged.bin]
+ * </pre>
+ * @since 1.0
+ */
+public class CohortCoordinator {
+
+    /** the interval at which the spool is checked */
+    private static final long POLL_MILLIS = 200;
+
+    private final CohortJob job;
+    private final Spool spool;
+    private final Path root;
+
+    private int localWorkers = 1;
+    private int threadsPerWorker = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private Duration claimTimeout = Duration.ofHours(1);
+    private int maxRestarts = 3;
+
+
+    /**
+     * @param job the job
+     * @param root the directory of the spool
+     */
+    public CohortCoordinator(CohortJob job, Path root) {
+        this.job = job;
+        this.root = root;
+        this.spool = new Spool(root);
+    }
+
+
+    /**
+     * splits the job into shards, evaluates them and merges the results
+     * @param shards the number of shards
+     * @param merged the file for the merged results, or null to only compute the summary
+     * @return the summary of the cohort
+     * @throws IOException if the spool cannot be used or a worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public CohortSummary run(int shards, Path merged) throws IOException, InterruptedException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive.");
+        }
+        spool.create(job, shards);
+
+        List<Process> processes = new ArrayList<>();
+        List<String> owners = new ArrayList<>();
+        int started = 0;
+        try {
+            for (int i = 0; i < localWorkers; i++) {
+                String owner = "local-" + (started++);
+                processes.add(startWorker(owner));
+                owners.add(owner);
+            }
+            int restarts = 0;
+            while (spool.listDone().size() < shards) {
+                Thread.sleep(POLL_MILLIS);
+                for (int i = processes.size() - 1; i >= 0; i--) {
+                    if (!processes.get(i).isAlive()) {
+                        spool.requeue(owners.get(i), null);
+                        processes.remove(i);
+                        owners.remove(i);
+                    }
+                }
+                long cutoff = System.currentTimeMillis() - claimTimeout.toMillis();
+                spool.requeue(null, FileTime.fromMillis(cutoff));
+                if (processes.isEmpty() && spool.countPending() > 0) {
+                    if (restarts++ >= maxRestarts) {
+                        throw new IOException("The workers failed " + restarts + " times.");
+                    }
+                    String owner = "local-" + (started++);
+                    processes.add(startWorker(owner));
+                    owners.add(owner);
+                }
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        return merge(root, merged);
+    }
+
+    private Process startWorker(String owner) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(), "--spool", root.toString(),
+                "--threads", Integer.toString(threadsPerWorker), "--id", owner);
+        builder.inheritIO();
+        return builder.start();
+    }
+
+    /**
+     * merges the results of the shards in a spool in the order of the members. all
+     * shards must have the time points of the first shard and the series of the job
+     * @param root the directory of the spool
+     * @param merged the file for the merged results, or null to only compute the summary
+     * @return the summary of the cohort
+     * @throws IOException if the results cannot be read or written, or do not match
+     */
+    public static CohortSummary merge(Path root, Path merged) throws IOException {
+        Spool spool = new Spool(root);
+        CohortJob job = CohortJob.load(spool.getJobFile());
+        List<String> names = spool.listDone();
+        if (names.isEmpty()) {
+            throw new IOException("No results in " + root);
+        }
+
+        CohortResultFile.Writer writer = null;
+        CohortSummary summary = null;
+        long[] times = null;
+        double[] values = null;
+        long next = 0;
+        try {
+            for (String name : names) {
+                try (CohortResultFile.Reader reader = new CohortResultFile.Reader(spool.getResultFile(name))) {
+                    if (reader.getFirst() != next) {
+                        throw new IOException("The results of members " + next + " to " + reader.getFirst() + " are missing.");
+                    }
+                    if (reader.getSeries() != job.getSeries().length) {
+                        throw new IOException("The results of shard " + name + " have " + reader.getSeries()
+                                + " series, the job has " + job.getSeries().length + ".");
+                    }
+                    if (summary == null) {
+                        times = reader.getTimes();
+                        summary = new CohortSummary(times, reader.getSeries());
+                        values = new double[times.length * reader.getSeries()];
+                        if (merged != null) {
+                            writer = new CohortResultFile.Writer(merged, 0, job.getMembers(), times, reader.getSeries());
+                        }
+                    } else if (!Arrays.equals(times, reader.getTimes())) {
+                        throw new IOException("The results of shard " + name + " have other time points than the first shard.");
+                    }
+                    for (int m = 0; m < reader.getCount(); m++) {
+                        reader.readMember(values);
+                        summary.add(values);
+                        if (writer != null) {
+                            writer.writeMember(values, 0);
+                        }
+                    }
+                    next += reader.getCount();
+                }
+            }
+            if (next != job.getMembers()) {
+                throw new IOException("The results of members " + next + " to " + job.getMembers() + " are missing.");
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * @param localWorkers the number of worker processes started on this machine; 0
+     * to leave the shards to workers on other machines
+     */
+    public void setLocalWorkers(int localWorkers) {
+        this.localWorkers = localWorkers;
+    }
+
+    /**
+     * @param threadsPerWorker the number of threads of each local worker
+     */
+    public void setThreadsPerWorker(int threadsPerWorker) {
+        this.threadsPerWorker = threadsPerWorker;
+    }
+
+    /**
+     * @param claimTimeout the time without a heartbeat of its worker after which a
+     * claimed shard is returned to the pending shards; at least twice {@link Spool#HEARTBEAT}
+     */
+    public void setClaimTimeout(Duration claimTimeout) {
+        if (claimTimeout == null || claimTimeout.compareTo(Spool.HEARTBEAT.multipliedBy(2)) < 0) {
+            throw new IllegalArgumentException("The claim timeout must be at least twice the heartbeat.");
+        }
+        this.claimTimeout = claimTimeout;
+    }
+
+    /**
+     * @param maxRestarts the number of times local workers are started again while shards are pending
+     */
+    public void setMaxRestarts(int maxRestarts) {
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * runs a job and writes the summary to summary.csv in the spool
+     * @param args the job file, the spool directory, the number of shards, the number
+     * of local workers and optionally the file for the merged results
+     * @throws Exception if the job fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: CohortCoordinator job.properties spool shards workers [merged.bin]");
+            System.exit(2);
+        }
+        Path root = Paths.get(args[1]);
+        CohortCoordinator coordinator = new CohortCoordinator(CohortJob.load(Paths.get(args[0])), root);
+        int workers = Integer.parseInt(args[3]);
+        coordinator.setLocalWorkers(workers);
+        coordinator.setThreadsPerWorker(Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, workers)));
+        CohortSummary summary = coordinator.run(Integer.parseInt(args[2]), (args.length > 4) ? Paths.get(args[4]) : null);
+        try (Writer out = Files.newBufferedWriter(root.resolve("summary.csv"), StandardCharsets.UTF_8)) {
+            summary.writeCsv(out);
+        }
+        System.out.println("Merged " + summary.getCount() + " members");
+    }
+}
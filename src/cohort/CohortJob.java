@@ -0,0 +1,250 @@
+/*
+ * -----------------
+ * CohortJob.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Take the default model from TwoCompartmentInsulin;
+ * 19-Oct-2026 : Set the time period in milliseconds;
+ *
+ */
+package cohort;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import model.InputSeries;
+import model.InsulinParameter;
+import model.MonteCarloSimulation;
+import model.ParameterDistribution;
+import model.TwoCompartmentInsulin;
+
+/**
+ * a cohort sweep of the {@link TwoCompartmentInsulin} model: a number of members
+ * whose parameters are drawn from distributions, evaluated with a common infusion
+ * over a common time period. a job is stored as a properties file, so that worker
+ * processes on this or other machines evaluate exactly the same members:
+ * <pre>
+ * members=100000
+ * seed=42
+ * start=0
+ * duration=86400
+ * step=15
+ * interval=300
+ * series=0,1
+ * parameter.k3=0.0011667
+ * distribution.k3=logNormal 0.0011667 0.3
+ * distribution.vp=uniform 3.5 4.7
+ * infusion=0:6,120:10,240:4
+ * </pre>
+ * the start is in milliseconds since the epoch; the duration, step and output
+ * interval (0 for every step) and the times of the infusion rates (mU/min) are in
+ * seconds from the start. parameters not given have the values of
+ * {@link TwoCompartmentInsulin#defaultModel()}. distributions are
+ * <code>logNormal median sigma</code>, <code>uniform low high</code> or
+ * <code>fixed value</code>. the series are the indices of the output series to
+ * keep, by default the plasma concentration.
+ * <p>
+ * the parameters of a member are drawn from a random generator seeded from the seed
+ * and the index of the member only, so a member has the same results whichever
+ * shard evaluates it
+ * @since 1.0
+ */
+public class CohortJob {
+
+    private final int members;
+    private final long seed;
+    private final long start;
+    private final int duration;
+    private final int step;
+    private final int interval;
+    private final int[] series;
+    private final double[] parameters;
+    private final Map<InsulinParameter, ParameterDistribution> distributions = new EnumMap<>(InsulinParameter.class);
+    private final long[] infusionTimes;
+    private final double[] infusionRates;
+
+    /** the job as stored */
+    private final Properties properties;
+
+
+    /**
+     * @param properties the job
+     * @throws IllegalArgumentException if the job is not valid
+     */
+    public CohortJob(Properties properties) {
+        this.properties = (Properties) properties.clone();
+        this.members = (int) integer(properties, "members", -1);
+        this.seed = integer(properties, "seed", 1);
+        this.start = integer(properties, "start", 0);
+        this.duration = (int) integer(properties, "duration", 3600);
+        this.step = (int) integer(properties, "step", 15);
+        this.interval = (int) integer(properties, "interval", 0);
+        if (members < 0) {
+            throw new IllegalArgumentException("The number of members must be given.");
+        }
+        if (step < 1 || duration < step || interval < 0) {
+            throw new IllegalArgumentException("The step must be positive and not longer than the duration.");
+        }
+
+        String[] indices = properties.getProperty("series", "0").split(",");
+        this.series = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            series[i] = Integer.parseInt(indices[i].trim());
+        }
+
+        TwoCompartmentInsulin model = TwoCompartmentInsulin.defaultModel();
+        this.parameters = new double[InsulinParameter.values().length];
+        for (InsulinParameter parameter : InsulinParameter.values()) {
+            String name = parameter.name().toLowerCase(Locale.ROOT);
+            String value = properties.getProperty("parameter." + name);
+            parameters[parameter.ordinal()] = (value == null) ? parameter.get(model) : Double.parseDouble(value.trim());
+            String distribution = properties.getProperty("distribution." + name);
+            if (distribution != null) {
+                distributions.put(parameter, parseDistribution(distribution));
+            }
+        }
+
+        String infusion = properties.getProperty("infusion", "").trim();
+        String[] items = infusion.isEmpty() ? new String[0] : infusion.split(",");
+        this.infusionTimes = new long[items.length];
+        this.infusionRates = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] pair = items[i].trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("The infusion must be a list of time:rate pairs.");
+            }
+            infusionTimes[i] = start + Math.round(Double.parseDouble(pair[0]) * 1000);
+            infusionRates[i] = Double.parseDouble(pair[1]);
+        }
+        // fails for infusion times which are not increasing
+        new InputSeries("", infusionTimes, infusionRates);
+    }
+
+
+    /**
+     * @param file the properties file of the job
+     * @return the job
+     * @throws IOException if the file cannot be read
+     */
+    public static CohortJob load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(in);
+        }
+        return new CohortJob(properties);
+    }
+
+    /**
+     * @param file the properties file to write the job to
+     * @throws IOException if the file cannot be written
+     */
+    public void store(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(out, "cohort job");
+        }
+    }
+
+    /**
+     * @return the template model of the job, with the parameters, time period and
+     * infusion of the job
+     */
+    public TwoCompartmentInsulin createTemplate() {
+        TwoCompartmentInsulin model = new TwoCompartmentInsulin();
+        for (InsulinParameter parameter : InsulinParameter.values()) {
+            parameter.set(model, parameters[parameter.ordinal()]);
+        }
+        model.setDeltat(step);
+        model.setTimeperiod(start, start + duration * 1000L);
+        model.setRxiSchedule(new InputSeries(model.getRxiKey(), infusionTimes, infusionRates));
+        return model;
+    }
+
+    /**
+     * draws the parameters of a member
+     * @param member the index of the member
+     * @param model the model of the member, with the parameters of the template
+     */
+    public void setup(int member, TwoCompartmentInsulin model) {
+        SplittableRandom random = MonteCarloSimulation.randomFor(seed, member);
+        for (Map.Entry<InsulinParameter, ParameterDistribution> entry : distributions.entrySet()) {
+            entry.getKey().set(model, entry.getValue().sample(random));
+        }
+    }
+
+    private static ParameterDistribution parseDistribution(String text) {
+        String[] words = text.trim().split("\\s+");
+        try {
+            switch (words[0]) {
+                case "logNormal":
+                    return ParameterDistribution.logNormal(Double.parseDouble(words[1]), Double.parseDouble(words[2]));
+                case "uniform":
+                    return ParameterDistribution.uniform(Double.parseDouble(words[1]), Double.parseDouble(words[2]));
+                case "fixed":
+                    return ParameterDistribution.fixed(Double.parseDouble(words[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown distribution '" + text + "'.");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Missing argument of distribution '" + text + "'.");
+        }
+    }
+
+    private static long integer(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        return (value == null) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * splits the members into contiguous shards of nearly equal size
+     * @param shard the index of the shard, or the number of shards for the end of the last
+     * @param shards the number of shards
+     * @return the index of the first member of the shard
+     */
+    public int shardStart(int shard, int shards) {
+        return (int) ((long) members * shard / shards);
+    }
+
+    /**
+     * @return the number of members
+     */
+    public int getMembers() {
+        return members;
+    }
+
+    /**
+     * @return the seed of the random generators
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the interval between the recorded time points, or null if every step is recorded
+     */
+    public Duration getInterval() {
+        return (interval == 0) ? null : Duration.ofSeconds(interval);
+    }
+
+    /**
+     * @return the indices of the output series kept
+     */
+    public int[] getSeries() {
+        return series.clone();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * -----------------
+ * CohortResultFile.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package cohort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * the binary results of a range of members of a cohort, as written by a shard and
+ * by the merge of all shards. the file is big-endian: the magic number and version
+ * as ints, the index of the first member as a long, the number of members, of time
+ * points and of series as ints, the time points as longs, and then for each member
+ * the values of each series at each time point as doubles
+ * @since 1.0
+ */
+public final class CohortResultFile {
+
+    /** the magic number, "CHRT" */
+    static final int MAGIC = 0x43485254;
+
+    /** the version of the format */
+    static final int VERSION = 1;
+
+
+    private CohortResultFile() {
+    }
+
+
+    /**
+     * writes a result file
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int memberSize;
+        private int remaining;
+
+        /**
+         * writes the header
+         * @param file the file
+         * @param first the index of the first member
+         * @param count the number of members
+         * @param times the time points in milliseconds since the epoch
+         * @param series the number of series
+         * @throws IOException if the file cannot be written
+         */
+        public Writer(Path file, long first, int count, long[] times, int series) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            this.memberSize = times.length * series;
+            this.remaining = count;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(first);
+            out.writeInt(count);
+            out.writeInt(times.length);
+            out.writeInt(series);
+            for (long time : times) {
+                out.writeLong(time);
+            }
+        }
+
+        /**
+         * writes the values of the next member
+         * @param values the values, series by series
+         * @param offset the index of the first value in the array
+         * @throws IOException if the file cannot be written
+         */
+        public void writeMember(double[] values, int offset) throws IOException {
+            if (remaining-- <= 0) {
+                throw new IllegalStateException("All members are written.");
+            }
+            for (int i = 0; i < memberSize; i++) {
+                out.writeDouble(values[offset + i]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            if (remaining > 0) {
+                throw new IOException(remaining + " members were not written.");
+            }
+        }
+    }
+
+    /**
+     * reads a result file
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final long first;
+        private final int count;
+        private final long[] times;
+        private final int series;
+
+        /**
+         * reads the header
+         * @param file the file
+         * @throws IOException if the file cannot be read or is not a result file
+         */
+        public Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a cohort result file: " + file);
+                }
+                this.first = in.readLong();
+                this.count = in.readInt();
+                this.times = new long[in.readInt()];
+                this.series = in.readInt();
+                for (int i = 0; i < times.length; i++) {
+                    times[i] = in.readLong();
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * reads the values of the next member
+         * @param values the array to read into, series by series
+         * @throws IOException if the file cannot be read
+         */
+        public void readMember(double[] values) throws IOException {
+            for (int i = 0; i < series * times.length; i++) {
+                values[i] = in.readDouble();
+            }
+        }
+
+        /**
+         * @return the index of the first member
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        /**
+         * @return the number of members
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the time points in milliseconds since the epoch
+         */
+        public long[] getTimes() {
+            return times.clone();
+        }
+
+        /**
+         * @return the number of series
+         */
+        public int getSeries() {
+            return series;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
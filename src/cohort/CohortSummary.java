@@ -0,0 +1,134 @@
+/*
+ * -----------------
+ * CohortSummary.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package cohort;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * the mean, standard deviation, minimum and maximum of each kept series of a cohort
+ * per time point. the members are added one after the other in the order of their
+ * index, so that the statistics are the same to the bit however the cohort was
+ * sharded
+ * @since 1.0
+ */
+public class CohortSummary {
+
+    private final long[] times;
+    private final int series;
+    private long count;
+    private final double[] mean;
+    private final double[] m2;
+    private final double[] min;
+    private final double[] max;
+
+
+    /**
+     * @param times the time points in milliseconds since the epoch
+     * @param series the number of series
+     */
+    public CohortSummary(long[] times, int series) {
+        this.times = times.clone();
+        this.series = series;
+        int size = times.length * series;
+        this.mean = new double[size];
+        this.m2 = new double[size];
+        this.min = new double[size];
+        this.max = new double[size];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+
+    /**
+     * adds the next member with Welford's update
+     * @param values the values of the member, series by series
+     */
+    public void add(double[] values) {
+        count++;
+        for (int i = 0; i < mean.length; i++) {
+            double x = values[i];
+            double delta = x - mean[i];
+            mean[i] += delta / count;
+            m2[i] += delta * (x - mean[i]);
+            min[i] = Math.min(min[i], x);
+            max[i] = Math.max(max[i], x);
+        }
+    }
+
+    /**
+     * @return the number of members
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param series the index of the series among the kept series
+     * @param point the index of the time point
+     * @return the mean
+     */
+    public double getMean(int series, int point) {
+        return mean[series * times.length + point];
+    }
+
+    /**
+     * @param series the index of the series among the kept series
+     * @param point the index of the time point
+     * @return the sample standard deviation
+     */
+    public double getStandardDeviation(int series, int point) {
+        return (count < 2) ? Double.NaN : Math.sqrt(m2[series * times.length + point] / (count - 1));
+    }
+
+    /**
+     * @param series the index of the series among the kept series
+     * @param point the index of the time point
+     * @return the minimum
+     */
+    public double getMin(int series, int point) {
+        return min[series * times.length + point];
+    }
+
+    /**
+     * @param series the index of the series among the kept series
+     * @param point the index of the time point
+     * @return the maximum
+     */
+    public double getMax(int series, int point) {
+        return max[series * times.length + point];
+    }
+
+    /**
+     * writes the statistics as comma separated values, one line per series and time point
+     * @param out where to write to
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("series,time,count,mean,sd,min,max\n");
+        for (int s = 0; s < series; s++) {
+            for (int i = 0; i < times.length; i++) {
+                out.append(Integer.toString(s)).append(',')
+                        .append(Instant.ofEpochMilli(times[i]).toString()).append(',')
+                        .append(Long.toString(count)).append(',')
+                        .append(Double.toString(getMean(s, i))).append(',')
+                        .append(Double.toString(getStandardDeviation(s, i))).append(',')
+                        .append(Double.toString(getMin(s, i))).append(',')
+                        .append(Double.toString(getMax(s, i))).append('\n');
+            }
+        }
+    }
+}
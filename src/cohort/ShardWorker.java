@@ -0,0 +1,178 @@
+/*
+ * -----------------
+ * ShardWorker.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Touch the claim of the running shard;
+ *
+ */
+package cohort;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import model.BatchEvaluator;
+import model.Trajectory;
+import model.TwoCompartmentInsulin;
+
+/**
+ * evaluates the shards of a cohort job and writes their results as
+ * {@link CohortResultFile}s. a worker either evaluates one range of members, or
+ * takes shards from a spool directory until none are pending, touching the claim of
+ * the shard it runs every {@link Spool#HEARTBEAT}:
+ * <pre>
+ * java cohort.ShardWorker --spool dir [--threads n] [--id worker]
+ * java cohort.ShardWorker job.properties first count results.bin [threads]
+ * </pre>
+ * @since 1.0
+ */
+public class ShardWorker {
+
+    /** the number of members evaluated per batch and thread */
+    private static final int BATCH_PER_THREAD = 64;
+
+
+    private ShardWorker() {
+    }
+
+
+    /**
+     * evaluates a range of members of a job
+     * @param job the job
+     * @param first the index of the first member
+     * @param count the number of members
+     * @param out the result file
+     * @param threads the number of threads
+     * @throws IOException if the results cannot be written
+     */
+    public static void runShard(CohortJob job, int first, int count, Path out, int threads) throws IOException {
+
+        TwoCompartmentInsulin template = job.createTemplate();
+        final int[] series = job.getSeries();
+        Trajectory reference = (job.getInterval() == null)
+                ? template.solve() : template.solve(job.getInterval(), new Trajectory());
+        final int points = reference.size();
+        long[] times = new long[points];
+        System.arraycopy(reference.getTimes(), 0, times, 0, points);
+
+        final int memberSize = points * series.length;
+        int batch = BATCH_PER_THREAD * threads;
+        final double[] buffer = new double[batch * memberSize];
+
+        try (BatchEvaluator evaluator = new BatchEvaluator(template, threads);
+                CohortResultFile.Writer writer = new CohortResultFile.Writer(out, first, count, times, series.length)) {
+            evaluator.setOutputInterval(job.getInterval());
+            for (int from = first; from < first + count; from += batch) {
+                final int base = from;
+                int to = Math.min(first + count, from + batch);
+                evaluator.evaluate(from, to, job::setup, (member, trajectory) -> {
+                    if (trajectory.size() != points) {
+                        throw new IllegalStateException("Member " + member + " has different time points.");
+                    }
+                    int offset = (member - base) * memberSize;
+                    for (int s = 0; s < series.length; s++) {
+                        System.arraycopy(trajectory.getValues(series[s]), 0, buffer, offset + s * points, points);
+                    }
+                });
+                for (int member = from; member < to; member++) {
+                    writer.writeMember(buffer, (member - base) * memberSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * evaluates the shards pending in a spool until none are left. while a shard is
+     * evaluated its claim is touched every {@link Spool#HEARTBEAT}, so that it is not
+     * returned to the pending shards however long it runs
+     * @param root the directory of the spool
+     * @param owner the id of this worker, recorded with its claims
+     * @param threads the number of threads
+     * @return the number of shards evaluated
+     * @throws IOException if the spool cannot be used
+     */
+    public static int runSpool(Path root, String owner, int threads) throws IOException {
+        Spool spool = new Spool(root);
+        CohortJob job = CohortJob.load(spool.getJobFile());
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int evaluated = 0;
+        String name;
+        try {
+            while ((name = spool.claim(owner)) != null) {
+                int[] shard = Spool.parse(name);
+                int first = job.shardStart(shard[0], shard[1]);
+                int count = job.shardStart(shard[0] + 1, shard[1]) - first;
+                final String claimed = name;
+                long interval = Spool.HEARTBEAT.toMillis();
+                ScheduledFuture<?> touch = heartbeat.scheduleWithFixedDelay(() -> {
+                    try {
+                        spool.touch(claimed);
+                    } catch (IOException e) {
+                        // the next beat tries again; the claim only expires after the timeout
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+                Path results = spool.createTemporaryFile();
+                try {
+                    runShard(job, first, count, results, threads);
+                    spool.complete(name, results);
+                } finally {
+                    touch.cancel(false);
+                    Files.deleteIfExists(results);
+                }
+                evaluated++;
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+        return evaluated;
+    }
+
+    /**
+     * @param args the arguments, see the class description
+     * @throws IOException if the job cannot be evaluated
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length >= 2 && "--spool".equals(args[0])) {
+            String owner = ManagementFactory.getRuntimeMXBean().getName();
+            for (int i = 2; i + 1 < args.length; i += 2) {
+                if ("--threads".equals(args[i])) {
+                    threads = Integer.parseInt(args[i + 1]);
+                } else if ("--id".equals(args[i])) {
+                    owner = args[i + 1];
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            int evaluated = runSpool(Paths.get(args[1]), owner, threads);
+            System.out.println(owner + ": evaluated " + evaluated + " shards");
+        } else if (args.length >= 4) {
+            if (args.length > 4) {
+                threads = Integer.parseInt(args[4]);
+            }
+            runShard(CohortJob.load(Paths.get(args[0])), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Paths.get(args[3]), threads);
+        } else {
+            System.err.println("Usage: ShardWorker --spool dir [--threads n] [--id worker]");
+            System.err.println("       ShardWorker job.properties first count results.bin [threads]");
+            System.exit(2);
+        }
+    }
+}
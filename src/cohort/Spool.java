@@ -0,0 +1,236 @@
+/*
+ * -----------------
+ * Spool.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Heartbeat of claims;
+ *
+ */
+package cohort;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * the directory through which a coordinator hands the shards of a cohort job to
+ * workers, on this machine or on others sharing the directory:
+ * <pre>
+ * job.properties          the job
+ * pending/shard-00003-of-00016   shards waiting for a worker
+ * claimed/shard-00003-of-00016   shards being evaluated, holding the id of the worker
+ * done/shard-00003-of-00016.bin  the results of evaluated shards
+ * </pre>
+ * shards move between the directories by atomic renames, so that each shard is
+ * claimed by one worker, and results appear only when they are complete. a worker
+ * touches the claims it holds every {@link #HEARTBEAT}, so that the time a claim was
+ * last modified tells whether its worker is still alive
+ * @since 1.0
+ */
+final class Spool {
+
+    /** the interval at which workers touch their claims */
+    static final Duration HEARTBEAT = Duration.ofSeconds(30);
+
+    private final Path root;
+    private final Path pending;
+    private final Path claimed;
+    private final Path done;
+
+
+    /**
+     * @param root the directory of the spool
+     */
+    Spool(Path root) {
+        this.root = root;
+        this.pending = root.resolve("pending");
+        this.claimed = root.resolve("claimed");
+        this.done = root.resolve("done");
+    }
+
+
+    /**
+     * creates an empty spool for a job
+     * @param job the job
+     * @param shards the number of shards
+     * @throws IOException if the spool cannot be created
+     */
+    void create(CohortJob job, int shards) throws IOException {
+        for (Path dir : new Path[] {pending, claimed, done}) {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+        }
+        job.store(getJobFile());
+        for (int shard = 0; shard < shards; shard++) {
+            Files.createFile(pending.resolve(name(shard, shards)));
+        }
+    }
+
+    /**
+     * claims a pending shard
+     * @param owner the id of the worker
+     * @return the name of the shard, or null if no shard is pending
+     * @throws IOException if the spool cannot be read
+     */
+    String claim(String owner) throws IOException {
+        for (String name : list(pending, "")) {
+            Path target = claimed.resolve(name);
+            try {
+                Files.move(pending.resolve(name), target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException | FileAlreadyExistsException e) {
+                // claimed by another worker
+                continue;
+            }
+            Files.write(target, owner.getBytes(StandardCharsets.UTF_8));
+            return name;
+        }
+        return null;
+    }
+
+    /**
+     * marks a claim as alive by setting its modification time to now
+     * @param name the name of the shard
+     * @return false if the shard is no longer claimed, e.g. after it was requeued
+     * @throws IOException if the claim cannot be touched
+     */
+    boolean touch(String name) throws IOException {
+        try {
+            Files.setLastModifiedTime(claimed.resolve(name), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * publishes the results of a claimed shard
+     * @param name the name of the shard
+     * @param results the complete results, in a temporary file of the spool
+     * @throws IOException if the results cannot be moved
+     */
+    void complete(String name, Path results) throws IOException {
+        Files.move(results, done.resolve(name + ".bin"), StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(claimed.resolve(name));
+    }
+
+    /**
+     * returns the claimed shards of a worker, or those claimed before a time, to
+     * the pending shards, e.g. after the worker failed
+     * @param owner the id of the worker, or null for any
+     * @param before the time before which the shards were last touched, or null for any
+     * @return the number of shards returned
+     * @throws IOException if the spool cannot be read
+     */
+    int requeue(String owner, FileTime before) throws IOException {
+        int count = 0;
+        for (String name : list(claimed, "")) {
+            Path file = claimed.resolve(name);
+            try {
+                if (owner != null && !owner.equals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))) {
+                    continue;
+                }
+                if (before != null && Files.getLastModifiedTime(file).compareTo(before) >= 0) {
+                    continue;
+                }
+                if (Files.exists(done.resolve(name + ".bin"))) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                Files.move(file, pending.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            } catch (NoSuchFileException e) {
+                // completed meanwhile
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of pending shards
+     * @throws IOException if the spool cannot be read
+     */
+    int countPending() throws IOException {
+        return list(pending, "").size();
+    }
+
+    /**
+     * @return the names of the result files, in the order of the shards
+     * @throws IOException if the spool cannot be read
+     */
+    List<String> listDone() throws IOException {
+        return list(done, ".bin");
+    }
+
+    /**
+     * @return a new temporary file in the spool for results being written
+     * @throws IOException if the file cannot be created
+     */
+    Path createTemporaryFile() throws IOException {
+        return Files.createTempFile(done, ".", ".tmp");
+    }
+
+    /**
+     * @param name the name of a shard
+     * @return the file of its results
+     */
+    Path getResultFile(String name) {
+        return done.resolve(name);
+    }
+
+    /**
+     * @return the properties file of the job
+     */
+    Path getJobFile() {
+        return root.resolve("job.properties");
+    }
+
+    /**
+     * @param shard the index of the shard
+     * @param shards the number of shards
+     * @return the name of the shard
+     */
+    static String name(int shard, int shards) {
+        return String.format("shard-%05d-of-%05d", shard, shards);
+    }
+
+    /**
+     * @param name the name of a shard
+     * @return the index and the number of shards
+     */
+    static int[] parse(String name) {
+        String[] parts = name.split("[-.]");
+        return new int[] {Integer.parseInt(parts[1]), Integer.parseInt(parts[3])};
+    }
+
+    private static List<String> list(Path dir, String suffix) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "shard-*" + suffix)) {
+            for (Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -18,6 +18,7 @@ import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.chart.title.TextTitle;
 import org.jfree.data.category.CategoryDataset;
 import org.jfree.data.category.DefaultCategoryDataset;
+import patient.Patient;
 
 /**
 * A demo showing the display of JFreeChart within a JavaFX application.
@@ -107,7 +108,7 @@ public class BMIDemoTest extends Application implements ChartMouseListenerFX {
      *  bodymass [kg]/height[m]*height[m]
      */
     public static double getBmi(double weight, double height) {
-       return (weight/(height*height));
+       return Patient.bmi(weight, height);
     }
     
     
@@ -0,0 +1,263 @@
+package compartmentmodelapp;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.block.BlockBorder;
+import org.jfree.chart.fx.ChartViewer;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.ValueMarker;
+import org.jfree.chart.renderer.category.BarRenderer;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.data.category.DefaultCategoryDataset;
+import patient.BmiAggregator;
+import patient.Patient;
+import patient.PatientRegistry;
+
+/**
+ * A dashboard of the BMI of all patients of a ward, backed by a
+ * {@link PatientRegistry}. The BMI per patient and the percentiles over the ward
+ * are aggregated in the background by a {@link BmiAggregator} as measurements
+ * arrive; the chart only holds the page of patients which is shown.
+ * <p>
+ * The demo registers a number of patients with made up measurements, 5000 by
+ * default or the number given as the first argument, and keeps adding weight
+ * measurements while it runs.
+ */
+public class BmiDashboard extends Application {
+
+    /** the number of patients shown per page */
+    private static final int PAGE_SIZE = 25;
+
+    private final PatientRegistry registry = new PatientRegistry(5000, PatientRegistry.ANY_IDS);
+
+    private BmiAggregator aggregator;
+
+    /** the dataset of the page which is shown */
+    private final DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+
+    /** the latest snapshot which is not shown yet, null if the view is up to date */
+    private final AtomicReference<BmiAggregator.Snapshot> pending = new AtomicReference<>();
+
+    private BmiAggregator.Snapshot shown;
+
+    private int page;
+
+    private JFreeChart chart;
+
+    /** the subtitle with the number of patients */
+    private final TextTitle summary = new TextTitle("");
+
+    private Label status;
+
+    private volatile boolean running = true;
+
+
+    /**
+     * Creates the bar chart of the latest BMI and the change of the BMI.
+     *
+     * @param dataset  the dataset.
+     * @param summary  the subtitle.
+     *
+     * @return The chart.
+     */
+    private static JFreeChart createChart(DefaultCategoryDataset dataset, TextTitle summary) {
+
+        JFreeChart chart = ChartFactory.createBarChart(
+            "BMI på afdelingen", "Patient" /* x-axis label*/,
+                "BMI (kg/square meter)" /* y-axis label */, dataset);
+
+        chart.addSubtitle(summary);
+
+        CategoryPlot plot = (CategoryPlot) chart.getPlot();
+        CategoryAxis domainAxis = plot.getDomainAxis();
+        domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_45);
+        BarRenderer renderer = (BarRenderer) plot.getRenderer();
+        renderer.setDrawBarOutline(false);
+        chart.getLegend().setFrame(BlockBorder.NONE);
+        return chart;
+    }
+
+    /**
+     * Registers the demo patients with a height and weekly weights over 90 days.
+     *
+     * @param count  the number of patients.
+     */
+    private void registerPatients(int count) {
+        Random random = new Random(1);
+        Instant now = Instant.now();
+        for (int i = 0; i < count; i++) {
+            Patient patient = registry.register(String.format(Locale.ROOT, "Patient %05d", i + 1));
+            final double height = 1.55 + 0.35 * random.nextDouble();
+            final double weight = 24 * height * height * (0.8 + 0.5 * random.nextDouble());
+            final double trend = random.nextGaussian() * 0.05;
+            registry.update(patient.getPatientid(), p -> {
+                p.addHeightMeasurementAtDate(height, now.minus(Duration.ofDays(365)));
+                for (int day = 90; day >= 0; day -= 7) {
+                    p.addWeightMeasurementAtDate(weight - trend * day, now.minus(Duration.ofDays(day)));
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds a weight measurement to a random patient every few milliseconds, as if
+     * the scales of the ward report them.
+     */
+    private void startFeed() {
+        final Object[] ids = registry.getPatients().stream().map(Patient::getPatientid).toArray();
+        Thread feed = new Thread(() -> {
+            Random random = new Random(2);
+            while (running && ids.length > 0) {
+                final double change = random.nextGaussian() * 0.3;
+                registry.update((Comparable) ids[random.nextInt(ids.length)], p -> {
+                    int last = p.getWeightMeasurements().lastIndex();
+                    p.addWeightMeasurementAtDate(p.getWeightMeasurements().getValue(last) + change, Instant.now());
+                });
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "ward-feed");
+        feed.setDaemon(true);
+        feed.start();
+    }
+
+    /**
+     * Shows the page of the latest snapshot, on the JavaFX thread.
+     */
+    private void showPending() {
+        BmiAggregator.Snapshot snapshot = pending.getAndSet(null);
+        if (snapshot != null) {
+            show(snapshot);
+        }
+    }
+
+    /**
+     * Fills the dataset with the patients of the current page only and marks the
+     * percentiles of the ward.
+     *
+     * @param snapshot  the aggregates to show.
+     */
+    private void show(BmiAggregator.Snapshot snapshot) {
+        shown = snapshot;
+        int pages = Math.max(1, (snapshot.getRowCount() + PAGE_SIZE - 1) / PAGE_SIZE);
+        page = Math.min(page, pages - 1);
+
+        dataset.setNotify(false);
+        dataset.clear();
+        List<BmiAggregator.Row> rows = snapshot.getPage(page * PAGE_SIZE, PAGE_SIZE);
+        for (BmiAggregator.Row row : rows) {
+            String id = String.valueOf(row.getId());
+            dataset.addValue(Double.isNaN(row.getLatest()) ? null : row.getLatest(), "Seneste BMI", id);
+            dataset.addValue(Double.isNaN(row.getDelta()) ? null : row.getDelta(), "Ændring, 30 dage", id);
+        }
+        dataset.setNotify(true);
+
+        CategoryPlot plot = (CategoryPlot) chart.getPlot();
+        plot.clearRangeMarkers();
+        double[] levels = snapshot.getPercentileLevels();
+        double[] percentiles = snapshot.getPercentiles();
+        for (int i = 0; i < levels.length; i++) {
+            if (!Double.isNaN(percentiles[i])) {
+                ValueMarker marker = new ValueMarker(percentiles[i], Color.GRAY, new BasicStroke(1f));
+                marker.setLabel(String.format(Locale.ROOT, "P%.0f", levels[i] * 100));
+                plot.addRangeMarker(marker);
+            }
+        }
+
+        summary.setText(String.format(Locale.ROOT,
+                "%d patienter, %d med BMI", snapshot.getRowCount(), snapshot.getPatientsWithBmi()));
+        status.setText(String.format(Locale.ROOT, "Side %d af %d", page + 1, pages));
+    }
+
+    private void turn(int pages) {
+        page = Math.max(0, page + pages);
+        if (shown != null) {
+            show(shown);
+        }
+    }
+
+    /**
+     * Adds a chart viewer with page buttons to the stage and displays it.
+     *
+     * @param stage  the stage.
+     * @throws Exception if something goes wrong.
+     */
+    @Override
+    public void start(Stage stage) throws Exception {
+
+        List<String> args = getParameters().getRaw();
+        registerPatients(args.isEmpty() ? 5000 : Integer.parseInt(args.get(0)));
+
+        chart = createChart(dataset, summary);
+        ChartViewer viewer = new ChartViewer(chart);
+
+        Button previous = new Button("Forrige");
+        previous.setOnAction(event -> turn(-1));
+        Button next = new Button("Næste");
+        next.setOnAction(event -> turn(1));
+        status = new Label();
+
+        BorderPane root = new BorderPane();
+        root.setCenter(viewer);
+        root.setBottom(new HBox(10, previous, status, next));
+
+        aggregator = new BmiAggregator(registry);
+        aggregator.setOrder(BmiAggregator.BY_LATEST);
+        aggregator.addSnapshotListener(snapshot -> {
+            // only the latest snapshot is shown, however many arrive before the JavaFX thread runs
+            if (pending.getAndSet(snapshot) == null) {
+                Platform.runLater(this::showPending);
+            }
+        });
+        aggregator.start();
+        startFeed();
+
+        Scene scene = new Scene(root);
+        stage.setScene(scene);
+        stage.setTitle("BMI Dashboard");
+        stage.setWidth(1000);
+        stage.setHeight(600);
+        stage.show();
+    }
+
+    /**
+     * Stops the feed and the aggregator.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (aggregator != null) {
+            aggregator.close();
+        }
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args the number of patients, optionally
+     */
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -4,12 +4,20 @@
 package compartmentmodelapp;
 
 import java.awt.Color;
+import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import metrics.JmxExporter;
+import metrics.MetricsRegistry;
+import metrics.TextExporter;
+import model.InsulinParameter;
 import model.ModelEvaluation;
+import model.MonteCarloResult;
+import model.MonteCarloSimulation;
+import model.ParameterDistribution;
 import model.TwoCompartmentInsulin;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -19,6 +27,7 @@ import org.jfree.chart.fx.ChartViewer;
 import org.jfree.chart.fx.interaction.ChartMouseEventFX;
 import org.jfree.chart.fx.interaction.ChartMouseListenerFX;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.DeviationRenderer;
 import org.jfree.data.time.RegularTimePeriod;
 import org.jfree.data.time.Second;
 import org.jfree.data.time.TimeTableXYDataset;
@@ -44,8 +53,27 @@ public class CompartmentModelApp extends Application implements ChartMouseListen
         return chart;
     }
     
+    private static JFreeChart createDeviationChart(MonteCarloResult result) {
+        
+        JFreeChart chart = ChartFactory.createTimeSeriesChart("Virtual patients", "time", "concentration", result.toDataset());
+        
+        chart.setBackgroundPaint(Color.white);
+        
+        XYPlot xyplot = (XYPlot) chart.getPlot();
+        xyplot.setDomainPannable(true);
+        xyplot.setRangePannable(true);
+        
+        /* the median as a line, the 5th to 95th percentile as a band */
+        DeviationRenderer renderer = new DeviationRenderer(true, false);
+        renderer.setSeriesPaint(0, Color.blue);
+        renderer.setSeriesFillPaint(0, new Color(200, 200, 255));
+        xyplot.setRenderer(renderer);
+        
+        return chart;
+    }
+    
     @Override
-    public void start(Stage stage) {
+    public void start(Stage stage) throws IOException {
         
         /** This program tests a two compartment insulin kinetics model with parameters:  */
         
@@ -70,9 +98,23 @@ public class CompartmentModelApp extends Application implements ChartMouseListen
         
         
         
-        ModelEvaluation results = model.calculate();
+        new JmxExporter().export(MetricsRegistry.getDefault());
         
-        JFreeChart chart = createChart(results); 
+        JFreeChart chart;
+        if (getParameters().getRaw().contains("--montecarlo")) {
+            
+            /* 1000 virtual patients with log-normally distributed volumes and rate constants */
+            MonteCarloSimulation simulation = new MonteCarloSimulation(model);
+            simulation.setDistribution(InsulinParameter.VP, ParameterDistribution.logNormal(model.getVp(), 0.2));
+            simulation.setDistribution(InsulinParameter.K3, ParameterDistribution.logNormal(model.getK3(), 0.3));
+            simulation.setDistribution(InsulinParameter.K4, ParameterDistribution.logNormal(model.getK4(), 0.3));
+            
+            chart = createDeviationChart(simulation.run(1000, model.getOutputKeys()[0]));
+        } else {
+            ModelEvaluation results = model.calculate();
+            
+            chart = createChart(results); 
+        }
         
         chart.getPlot().addChangeListener(this);
                 
@@ -88,6 +130,16 @@ public class CompartmentModelApp extends Application implements ChartMouseListen
         stage.show();
     }
 
+    /**
+     * Writes the metrics of the model evaluations to the console on exit.
+     * 
+     * @throws IOException if the metrics cannot be written
+     */
+    @Override
+    public void stop() throws IOException {
+        new TextExporter(System.out).export(MetricsRegistry.getDefault());
+    }
+
     /**
      * @param args the command line arguments
      */
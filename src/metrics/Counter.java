@@ -0,0 +1,54 @@
+/*
+ * -----------------
+ * Counter.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * a monotonically increasing count. increments are lock free and spread over
+ * several cells under contention, so counting on hot paths is cheap
+ * @since 1.0
+ */
+public class Counter implements Metric {
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * increases the count by one
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * @param n the amount to increase the count by
+     */
+    public void add(long n) {
+        count.add(n);
+    }
+
+    /**
+     * @return the current count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void report(String name, BiConsumer<String, Number> out) {
+        out.accept(name, getCount());
+    }
+}
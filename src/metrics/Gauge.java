@@ -0,0 +1,46 @@
+/*
+ * -----------------
+ * Gauge.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * a value computed when it is reported, e.g. a rate derived from two counters
+ * @since 1.0
+ */
+public class Gauge implements Metric {
+
+    private final DoubleSupplier value;
+
+    /**
+     * @param value computes the current value
+     */
+    public Gauge(DoubleSupplier value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the current value
+     */
+    public double getValue() {
+        return value.getAsDouble();
+    }
+
+    @Override
+    public void report(String name, BiConsumer<String, Number> out) {
+        out.accept(name, getValue());
+    }
+}
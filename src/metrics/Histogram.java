@@ -0,0 +1,144 @@
+/*
+ * -----------------
+ * Histogram.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * a histogram of non negative long values, e.g. latencies in nanoseconds.
+ * values are counted in log-linear buckets: each power of two is split into
+ * 16 buckets, so that percentiles are reported with a relative error below 7%.
+ * recording is lock free and does not allocate
+ * @since 1.0
+ */
+public class Histogram implements Metric {
+
+    /** the number of bits of the sub bucket index */
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** enough buckets for all non negative long values */
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * records a value
+     * @param value the value; negative values are recorded as 0
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, NaN if there are none
+     */
+    public double getMean() {
+        long n = getCount();
+        return (n == 0) ? Double.NaN : (double) getSum() / n;
+    }
+
+    /**
+     * @return the largest recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1
+     * @return the upper bound of the bucket holding the quantile, 0 if no values
+     * have been recorded
+     */
+    public long getQuantile(double quantile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public void report(String name, BiConsumer<String, Number> out) {
+        out.accept(name + ".count", getCount());
+        out.accept(name + ".mean", getMean());
+        out.accept(name + ".p50", getQuantile(0.5));
+        out.accept(name + ".p90", getQuantile(0.9));
+        out.accept(name + ".p99", getQuantile(0.99));
+        out.accept(name + ".max", getMax());
+    }
+
+    /**
+     * values below SUB_BUCKETS have a bucket each; above, the bucket is given by
+     * the position of the highest bit and the SUB_BITS bits below it
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BITS) - 1;
+        long sub = SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1));
+        long upper = ((sub + 1) << shift) - 1;
+        return (upper < 0) ? Long.MAX_VALUE : upper;
+    }
+}
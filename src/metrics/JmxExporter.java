@@ -0,0 +1,140 @@
+/*
+ * -----------------
+ * JmxExporter.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * registers one MBean which exposes every value of every metric of a registry as
+ * a read only attribute. the attributes are read from the registry on each request,
+ * so metrics created after the export are visible as well
+ * @since 1.0
+ */
+public class JmxExporter implements MetricsExporter {
+
+    /** the default object name of the MBean */
+    public static final String DEFAULT_NAME = "compartmentmodel:type=Metrics";
+
+    private final String objectName;
+
+    /**
+     * creates an exporter registering the MBean under {@link #DEFAULT_NAME}
+     */
+    public JmxExporter() {
+        this(DEFAULT_NAME);
+    }
+
+    /**
+     * @param objectName the object name of the MBean
+     */
+    public JmxExporter(String objectName) {
+        this.objectName = objectName;
+    }
+
+    @Override
+    public void export(MetricsRegistry registry) throws IOException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new MetricsMBean(registry), name);
+        } catch (JMException e) {
+            throw new IOException("Cannot register metrics MBean " + objectName, e);
+        }
+    }
+
+
+    /**
+     * the MBean reading its attributes from the registry
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        private final MetricsRegistry registry;
+
+        MetricsMBean(MetricsRegistry registry) {
+            this.registry = registry;
+        }
+
+        private Map<String, Number> values() {
+            Map<String, Number> values = new LinkedHashMap<>();
+            registry.report(values::put);
+            return values;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Number value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> entry : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                        entry.getKey(), true, false, false));
+            }
+            return new MBeanInfo(getClass().getName(), "Compartment model metrics",
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+        }
+    }
+}
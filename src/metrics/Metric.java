@@ -0,0 +1,32 @@
+/*
+ * -----------------
+ * Metric.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.util.function.BiConsumer;
+
+/**
+ * a metric kept in a {@link MetricsRegistry}. a metric reports its current values
+ * as named numbers, which is all an exporter needs to know about it
+ * @since 1.0
+ */
+public interface Metric {
+
+    /**
+     * reports the current values of this metric
+     * @param name the name under which the metric is registered
+     * @param out receives the value names, derived from name, and the values
+     */
+    void report(String name, BiConsumer<String, Number> out);
+}
@@ -0,0 +1,32 @@
+/*
+ * -----------------
+ * MetricsExporter.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.io.IOException;
+
+/**
+ * makes the metrics of a registry available outside the application,
+ * e.g. as a text dump or through JMX
+ * @since 1.0
+ */
+public interface MetricsExporter {
+
+    /**
+     * exports the metrics of the registry
+     * @param registry the registry to export
+     * @throws IOException if the metrics cannot be exported
+     */
+    void export(MetricsRegistry registry) throws IOException;
+}
@@ -0,0 +1,118 @@
+/*
+ * -----------------
+ * MetricsRegistry.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * a named set of metrics. metrics are created on first use and then shared by
+ * all callers asking for the same name, so code on hot paths should look up its
+ * metrics once and keep them. names are dot separated, e.g.
+ * <code>model.TwoCompartmentInsulin.latency</code>
+ * @since 1.0
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by the application
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name the name of the counter
+     * @return the counter with this name, created if necessary
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * @param name the name of the histogram
+     * @return the histogram with this name, created if necessary
+     */
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class);
+    }
+
+    /**
+     * registers a gauge, unless there already is one with this name
+     * @param name the name of the gauge
+     * @param value computes the value of the gauge
+     * @return the gauge with this name
+     */
+    public Gauge gauge(String name, DoubleSupplier value) {
+        Metric metric = metrics.computeIfAbsent(name, n -> new Gauge(value));
+        return checkType(name, metric, Gauge.class);
+    }
+
+    /**
+     * @param name the name of the metric
+     * @return the metric with this name, or null if there is none
+     */
+    public Metric getMetric(String name) {
+        return metrics.get(name);
+    }
+
+    /**
+     * @return the metrics by name, sorted by name
+     */
+    public SortedMap<String, Metric> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    /**
+     * reports the current values of all metrics, sorted by name
+     * @param out receives the value names and values
+     */
+    public void report(BiConsumer<String, Number> out) {
+        for (Map.Entry<String, Metric> entry : getMetrics().entrySet()) {
+            entry.getValue().report(entry.getKey(), out);
+        }
+    }
+
+    /**
+     * removes all metrics
+     */
+    public void clear() {
+        metrics.clear();
+    }
+
+    private <T extends Metric> T get(String name, Class<T> type) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(name, n -> (type == Counter.class) ? new Counter() : new Histogram());
+        }
+        return checkType(name, metric, type);
+    }
+
+    private static <T extends Metric> T checkType(String name, Metric metric, Class<T> type) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + metric.getClass().getSimpleName()
+                    + ", not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * -----------------
+ * TextExporter.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * writes the current values of all metrics as lines of <code>name value</code>,
+ * sorted by name
+ * @since 1.0
+ */
+public class TextExporter implements MetricsExporter {
+
+    private final Appendable out;
+
+    /**
+     * @param out the destination of the dump, e.g. System.out
+     */
+    public TextExporter(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void export(MetricsRegistry registry) throws IOException {
+        try {
+            registry.report((name, value) -> {
+                try {
+                    out.append(name).append(' ').append(format(value)).append(System.lineSeparator());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String format(Number value) {
+        if (value instanceof Double) {
+            double d = value.doubleValue();
+            return (Double.isNaN(d) || Double.isInfinite(d)) ? String.valueOf(d) : String.format("%.3f", d);
+        }
+        return value.toString();
+    }
+}
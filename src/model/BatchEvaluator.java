@@ -0,0 +1,246 @@
+/*
+ * -----------------
+ * BatchEvaluator.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Added split;
+ * 19-Oct-2026 : Optional output interval;
+ * 19-Oct-2026 : Reset the copies fully to the template for each member;
+ *
+ */
+package model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * evaluates a {@link TwoCompartmentInsulin} model for many members of a population,
+ * e.g. parameter sets drawn from distributions, on a fixed pool of threads.
+ * <p>
+ * every worker thread keeps its own copy of the template model and its own
+ * {@link Trajectory}, which are reused for all members it evaluates; for each member
+ * the copy is reset to the template, with its parameters, inputs and events, changed
+ * by the member setup and solved, and the trajectory is passed to the member sink on the worker thread.
+ * the sink must copy what it needs before returning, as the trajectory is reused.
+ * <p>
+ * the members of a batch are split into contiguous chunks, so a member is always
+ * evaluated the same way whatever the number of threads
+ * @since 1.0
+ */
+public class BatchEvaluator implements AutoCloseable {
+
+    /**
+     * sets up the model of one member
+     */
+    public interface MemberSetup {
+
+        /**
+         * @param member the index of the member
+         * @param model the model to set up, a copy of the template
+         */
+        void setup(int member, TwoCompartmentInsulin model);
+    }
+
+    /**
+     * receives the results of one member, on the worker thread
+     */
+    public interface MemberSink {
+
+        /**
+         * @param member the index of the member
+         * @param trajectory the trajectory of the member; reused after this call returns
+         */
+        void accept(int member, Trajectory trajectory);
+    }
+
+    /**
+     * a task run for one chunk of a range
+     */
+    public interface RangeTask {
+
+        /**
+         * @param slot the index of the chunk, less than the number of threads
+         * @param from the first index of the chunk
+         * @param to the index after the last of the chunk
+         */
+        void run(int slot, int from, int to);
+    }
+
+    /** the template model */
+    private final TwoCompartmentInsulin template;
+
+    /** the number of worker threads */
+    private final int threads;
+
+    /** the worker threads */
+    private final ExecutorService executor;
+
+    /** the interval between the recorded time points, null to record every step */
+    private volatile Duration outputInterval;
+
+    /** the model copies and trajectories, one per chunk of a batch */
+    private final TwoCompartmentInsulin[] models;
+    private final Trajectory[] trajectories;
+
+
+    /**
+     * creates an evaluator with one thread per available processor
+     * @param template the template model
+     */
+    public BatchEvaluator(TwoCompartmentInsulin template) {
+        this(template, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param template the template model; must not be changed while evaluating
+     * @param threads the number of worker threads
+     */
+    public BatchEvaluator(TwoCompartmentInsulin template, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive.");
+        }
+        this.template = template;
+        this.threads = threads;
+        this.models = new TwoCompartmentInsulin[threads];
+        this.trajectories = new Trajectory[threads];
+        for (int i = 0; i < threads; i++) {
+            models[i] = copy(template);
+            trajectories[i] = new Trajectory();
+        }
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "batch-evaluator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * evaluates the members in the range [from, to) and waits until all are done;
+     * concurrent calls are evaluated one after the other
+     * @param from the index of the first member
+     * @param to the index after the last member
+     * @param setup sets up the model of each member
+     * @param sink receives the trajectory of each member
+     */
+    public synchronized void evaluate(int from, int to, MemberSetup setup, MemberSink sink) {
+        split(to - from, (slot, start, end) -> {
+            TwoCompartmentInsulin model = models[slot];
+            Trajectory trajectory = trajectories[slot];
+            for (int member = from + start; member < from + end; member++) {
+                model.reset(template);
+                setup.setup(member, model);
+                Duration interval = outputInterval;
+                if (interval == null) {
+                    model.solve(trajectory);
+                } else {
+                    model.solve(interval, trajectory);
+                }
+                sink.accept(member, trajectory);
+            }
+        });
+    }
+
+    /**
+     * splits the range [0, count) into at most one contiguous chunk per worker
+     * thread, runs the task for each chunk on the workers and waits until all are done;
+     * used e.g. to reduce the results of a batch over disjoint time ranges
+     * @param count the size of the range
+     * @param task the task to run for each chunk
+     */
+    public synchronized void split(int count, RangeTask task) {
+
+        if (count <= 0) {
+            return;
+        }
+        int chunks = Math.min(threads, count);
+        List<Future<?>> futures = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final int slot = c;
+            final int start = (int) ((long) count * c / chunks);
+            final int end = (int) ((long) count * (c + 1) / chunks);
+            futures.add(executor.submit(() -> task.run(slot, start, end)));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating a batch.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return the template model
+     */
+    public TwoCompartmentInsulin getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the interval between the recorded time points, or null if every step is recorded
+     */
+    public Duration getOutputInterval() {
+        return outputInterval;
+    }
+
+    /**
+     * records the trajectories only every interval, e.g. to keep the output of large
+     * populations small
+     * @param outputInterval the interval between the recorded time points, or null
+     * to record every step
+     */
+    public void setOutputInterval(Duration outputInterval) {
+        this.outputInterval = outputInterval;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * stops the worker threads
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return a copy of the model of the same class
+     */
+    private static TwoCompartmentInsulin copy(TwoCompartmentInsulin model) {
+        if (model instanceof GlucoseInsulin) {
+            return new GlucoseInsulin((GlucoseInsulin) model);
+        }
+        return new TwoCompartmentInsulin(model);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * -----------------
+ * ClosedLoopSimulation.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Read the time period in milliseconds;
+ *
+ */
+package model;
+
+import java.time.Duration;
+
+/**
+ * simulates a model under the control of an {@link InfusionController}: the
+ * controller is asked for the value of one input at the start and then every
+ * control interval, and the solver continues from the live state with the new
+ * value. the cost of a run is therefore linear in the length of the time period,
+ * whatever the number of control decisions.
+ * <p>
+ * the input chosen by the controller replaces the series of that input; scheduled
+ * events and state triggers of the model apply as usual.
+ * a simulation keeps its own solver and can be reused for many trials, but is not
+ * thread safe; use one simulation, with its own model, per thread
+ * @since 1.0
+ */
+public class ClosedLoopSimulation {
+
+    /** the model to simulate */
+    private final CompartmentModel model;
+
+    /** the index of the input set by the controller */
+    private final int input;
+
+    /** the control interval in milliseconds */
+    private final long interval;
+
+    private final Solver solver = new Solver();
+
+
+    /**
+     * creates a simulation controlling the first input of the model, e.g. the
+     * insulin infusion of {@link TwoCompartmentInsulin}
+     * @param model the model to simulate
+     * @param controlInterval the time between control decisions
+     */
+    public ClosedLoopSimulation(CompartmentModel model, Duration controlInterval) {
+        this(model, 0, controlInterval);
+    }
+
+    /**
+     * @param model the model to simulate
+     * @param input the index of the input set by the controller
+     * @param controlInterval the time between control decisions
+     */
+    public ClosedLoopSimulation(CompartmentModel model, int input, Duration controlInterval) {
+        if (controlInterval.toMillis() <= 0) {
+            throw new IllegalArgumentException("The control interval must be positive.");
+        }
+        if (input < 0 || input >= model.getInputs().length) {
+            throw new IllegalArgumentException("The model has no input " + input);
+        }
+        this.model = model;
+        this.input = input;
+        this.interval = controlInterval.toMillis();
+    }
+
+
+    /**
+     * runs one trial over the time period of the model
+     * @param controller the controller
+     * @return the trajectory of the trial
+     */
+    public Trajectory run(InfusionController controller) {
+        return run(controller, new Trajectory());
+    }
+
+    /**
+     * runs one trial over the time period of the model
+     * @param controller the controller
+     * @param out the trajectory receiving the results, reset and reused; may be null
+     * if only the final state is of interest, see {@link #getState()}
+     * @return the trajectory of the trial
+     */
+    public Trajectory run(InfusionController controller, Trajectory out) {
+
+        solver.reset(model);
+        long start = solver.getTime();
+        long end = model.getEndMillis();
+
+        double rate = controller.nextRate(start, solver.getState(), 0);
+        solver.setInputOverride(input, rate);
+
+        if (out != null) {
+            out.reset(model.getOutputKeys(), (int) Math.min(Integer.MAX_VALUE - 8, (end - start) / (model.getDeltat() * 1000L) + 2));
+            out.add(start, solver.getState(), solver.getInputs());
+        }
+
+        for (long next = start + interval; solver.getTime() < end; next += interval) {
+            solver.advanceTo(Math.min(next, end), out);
+            if (solver.getTime() < end) {
+                rate = controller.nextRate(solver.getTime(), solver.getState(), rate);
+                solver.setInputOverride(input, rate);
+                if (out != null) {
+                    // the recorded input is the one in effect from this time point on
+                    out.replaceLast(solver.getState(), solver.getInputs());
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return the state at the end of the last trial; updated in place by the next trial
+     */
+    public double[] getState() {
+        return solver.getState();
+    }
+
+    /**
+     * @return the number of solver steps of the last trial
+     */
+    public long getSteps() {
+        return solver.getSteps();
+    }
+
+    /**
+     * @return the simulated model
+     */
+    public CompartmentModel getModel() {
+        return model;
+    }
+}
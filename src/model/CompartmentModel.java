@@ -10,6 +10,16 @@
  * Changes:
  * --------
  * 31-Jan-2017 : Version 1 (UP);
+ * 19-Oct-2026 : Record evaluation metrics;
+ * 19-Oct-2026 : Evaluate all models with the shared Solver;
+ * 19-Oct-2026 : Scheduled events and state triggers;
+ * 19-Oct-2026 : Copy constructor;
+ * 19-Oct-2026 : Evaluation at requested time points or intervals;
+ * 19-Oct-2026 : Optional evaluation pyramid;
+ * 19-Oct-2026 : Keep the time period in milliseconds;
+ * 19-Oct-2026 : Document the time points landed on events;
+ * 19-Oct-2026 : Build the pyramid for requested time points as well;
+ * 19-Oct-2026 : Copy the settings of another model into an existing model;
  *
  */
 package model;
@@ -18,18 +28,27 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.TimeZone;
-import org.jfree.data.time.SimpleTimePeriod;
+import java.util.function.Consumer;
 import org.jfree.data.time.TimePeriod;
 import org.jfree.data.time.TimeTableXYDataset;
 
 /**
  * a compartment model represents a set of ordinary differential equations which are evaluated over a
  * given time period, per time step given by delta t (in whole seconds). Evaluations of the model equations 
- * create ModelEvaluation instances which are of {@link TimeTableXYDataset} since they are evaluated 
- * over an equally spaced time range. By default the time step is 15 sec and the
+ * create ModelEvaluation instances which are of {@link TimeTableXYDataset} since all their series
+ * share the same time points. The time points are spaced by delta t, except that the solver
+ * also lands on the times of scheduled events, input changes and located state triggers,
+ * which may fall between steps. By default the time step is 15 sec and the
  * time period is current system time with a duration of one hour, at the default time zone.
  * the class is abstract so it cannot be directly instantiated
+ * <p>
+ * subclasses define the equations by their state variables, initial state, inputs and
+ * derivatives; all models are evaluated by the same {@link Solver}. {@link #solve()}
+ * returns the primitive {@link Trajectory} of the solver without building a dataset
  * @since 1.0
  */
 public abstract class CompartmentModel {
@@ -40,14 +59,28 @@ public abstract class CompartmentModel {
     protected int deltat = 15;
     
     /**
-     * the time period defining the start and end of the stepwise calculations
+     * the start and end of the stepwise calculations in milliseconds since the epoch;
+     * kept as primitives so that models can be evaluated without loading the chart library
      */
-    protected TimePeriod timeperiod;
+    private long start;
+    private long end;
         
     
     /** the time zone for the time points in the evaluation */
     protected TimeZone zone; 
     
+    /** the scheduled events, sorted by time */
+    private final List<ScheduledEvent> events = new ArrayList<>();
+    
+    /** the state triggered events */
+    private final List<StateTrigger> triggers = new ArrayList<>();
+    
+    /** the bucket widths of the pyramid built by calculate, null if none is built */
+    private Duration[] pyramidLevels;
+    
+    /** the solver of each thread, reused for all evaluations on that thread */
+    private static final ThreadLocal<Solver> SOLVERS = ThreadLocal.withInitial(Solver::new);
+    
     
     /**
      * default constructor, intended to be called by subclasses
@@ -67,13 +100,55 @@ public abstract class CompartmentModel {
      */
     protected CompartmentModel(int delta) {
         
-        setDeltat(deltat);
+        setDeltat(delta);
         
-        setTimeperiod(new SimpleTimePeriod(java.util.Date.from(Instant.now().truncatedTo(ChronoUnit.MINUTES)), java.util.Date.from(Instant.now().truncatedTo(ChronoUnit.MINUTES).plus(Duration.ofMinutes(60))) ));
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        setTimeperiod(now, now.plus(Duration.ofMinutes(60)));
              
         setZone(TimeZone.getTimeZone(ZoneId.systemDefault()));
     }
     
+    
+    /**
+     * copy constructor, intended to be called by the copy constructors of subclasses;
+     * copies the time step, time period, time zone, events and triggers
+     * @param other the model to copy
+     */
+    protected CompartmentModel(CompartmentModel other) {
+        copyFrom(other);
+    }
+    
+    /**
+     * sets the time step, time period, time zone, events and triggers to those of
+     * another model, as the copy constructor does, e.g. to reuse a copy
+     * @param other the model to copy
+     */
+    protected final void copyFrom(CompartmentModel other) {
+        
+        setDeltat(other.getDeltat());
+        setTimeperiod(other.start, other.end);
+        setZone(other.getZone());
+        
+        events.clear();
+        for (ScheduledEvent event : other.events) {
+            events.add(new ScheduledEvent(event.getTime(), copyAction(event.getAction())));
+        }
+        triggers.clear();
+        triggers.addAll(other.triggers);
+        pyramidLevels = other.pyramidLevels;
+    }
+    
+    /**
+     * returns the action to use for an event in a copy of this model; actions which
+     * depend on the parameters of the model they belong to must be bound to the copy.
+     * by default actions are shared
+     * @param action the action of an event of the copied model
+     * @return the action for the copy
+     */
+    protected EventAction copyAction(EventAction action) {
+        return action;
+    }
+    
    
     /**
      * performs a model evaluation with current parameter values and stores the
@@ -94,12 +169,243 @@ public abstract class CompartmentModel {
     
      
      /**
-      * method to perform the model calculation
+      * performs a model evaluation with current parameter values, with the results
+      * only at the given time points, e.g. the times of blood samples; the model is
+      * still stepped by delta t in between
+      * @param times the time points, strictly increasing and within the time period
+      * @return the model evaluation instance with the results at the time points
+      */
+     public ModelEvaluation calculate(List<Instant> times) {
+         long[] millis = new long[times.size()];
+         for (int i = 0; i < millis.length; i++) {
+             millis[i] = times.get(i).toEpochMilli();
+         }
+         ModelEvaluation results = new ModelEvaluation(this, null, null);
+         Trajectory trajectory = new Trajectory();
+         solve(millis, withPyramid(trajectory, results));
+         trajectory.addTo(results, getZone());
+         return results;
+     }
+     
+     /**
+      * performs a model evaluation with current parameter values, with the results
+      * at the start and then every interval, which may be longer than delta t
+      * @param interval the interval between the results, at least a second
+      * @return the model evaluation instance with the results every interval
+      */
+     public ModelEvaluation calculate(Duration interval) {
+         ModelEvaluation results = new ModelEvaluation(this, null, null);
+         Trajectory trajectory = new Trajectory();
+         solve(interval, withPyramid(trajectory, results));
+         trajectory.addTo(results, getZone());
+         return results;
+     }
+    
+     /**
+      * solves the model equations with current parameter values, without creating
+      * a model evaluation
+      * @return the trajectory of the state variables and inputs
+      */
+     public Trajectory solve() {
+         return solve(new Trajectory());
+     }
+     
+     /**
+      * solves the model equations with current parameter values into the given
+      * trajectory, which is reset and reused
+      * @param out the sink receiving the results, e.g. a trajectory
+      * @return the sink
+      */
+     public <T extends OutputSink> T solve(T out) {
+         return measure(out, solver -> solver.solve(this, out));
+     }
+     
+     /**
+      * solves the model equations with current parameter values into the given
+      * trajectory, recording only the given time points
+      * @param times the time points in milliseconds since the epoch, strictly
+      * increasing and within the time period
+      * @param out the sink receiving the results, e.g. a trajectory
+      * @return the sink
+      */
+     public <T extends OutputSink> T solve(long[] times, T out) {
+         return measure(out, solver -> solver.solve(this, times, out));
+     }
+     
+     /**
+      * solves the model equations with current parameter values into the given
+      * trajectory, recording the start and then every interval
+      * @param interval the interval between the recorded time points
+      * @param out the sink receiving the results, e.g. a trajectory
+      * @return the sink
+      */
+     public <T extends OutputSink> T solve(Duration interval, T out) {
+         return measure(out, solver -> solver.solveEvery(this, interval.toMillis(), out));
+     }
+     
+     /**
+      * runs the solver of the current thread and records the evaluation metrics
+      */
+     private <T extends OutputSink> T measure(T out, Consumer<Solver> run) {
+         
+         boolean measured = EvaluationMetrics.isEnabled();
+         long allocated = measured ? EvaluationMetrics.allocatedBytes() : -1;
+         long started = measured ? System.nanoTime() : 0;
+         
+         Solver solver = SOLVERS.get();
+         run.accept(solver);
+         
+         if (measured) {
+             EvaluationMetrics.of(getClass()).record(System.nanoTime() - started, solver.getSteps(), allocated);
+         }
+         return out;
+     }
+     
+     /**
+      * method to perform the model calculation; solves the model and adds the
+      * trajectory to the results
       * @param results the evaluation results object to store the results from calculating the model equations 
       */
-     protected abstract void evaluateModel(ModelEvaluation results);
+     protected void evaluateModel(ModelEvaluation results) {
+         Trajectory trajectory = new Trajectory();
+         solve(withPyramid(trajectory, results));
+         trajectory.addTo(results, getZone());
+     }
+     
+     /**
+      * returns the sink to solve into for a model evaluation: the trajectory, and the
+      * pyramid of the evaluation if pyramids are enabled
+      */
+     private OutputSink withPyramid(Trajectory trajectory, ModelEvaluation results) {
+         if (pyramidLevels == null) {
+             return trajectory;
+         }
+         EvaluationPyramid pyramid = new EvaluationPyramid(pyramidLevels);
+         results.setPyramid(pyramid);
+         return OutputSink.both(trajectory, pyramid);
+     }
+     
+     /**
+      * sets whether model evaluations created by any of the calculate methods build
+      * an {@link EvaluationPyramid} of their results in the same pass, e.g. for
+      * evaluations over days which are viewed at different zoom levels. the pyramid
+      * aggregates the time points the evaluation records, i.e. every delta t, every
+      * interval or only the given time points
+      * @param levels the bucket widths, increasing and each a multiple of the one
+      * before; {@link EvaluationPyramid#DEFAULT_LEVELS} if empty, or null for no pyramid
+      */
+     public void setPyramidLevels(Duration... levels) {
+         if (levels == null) {
+             pyramidLevels = null;
+         } else {
+             pyramidLevels = (levels.length == 0) ? EvaluationPyramid.DEFAULT_LEVELS.clone() : levels.clone();
+             // fails for levels which do not nest
+             new EvaluationPyramid(pyramidLevels);
+         }
+     }
+     
+     /**
+      * @return the bucket widths of the pyramids built by calculate, or null if none are built
+      */
+     public Duration[] getPyramidLevels() {
+         return (pyramidLevels == null) ? null : pyramidLevels.clone();
+     }
+     
+     /**
+      * @return the keys of the state variables, in the order of the state array
+      */
+     protected abstract Comparable[] getStateKeys();
      
+     /**
+      * @return the number of state variables
+      */
+     public int getStateCount() {
+         return getStateKeys().length;
+     }
+     
+     /**
+      * sets the initial values of the state variables
+      * @param y the state array to fill
+      */
+     protected abstract void initialState(double[] y);
      
+     /**
+      * calculates the derivatives of the state variables
+      * @param t the time in seconds since the start of the time period
+      * @param y the current values of the state variables
+      * @param u the current values of the inputs, in the order of {@link #getInputs()}
+      * @param dydt the array to fill with the derivatives per second
+      */
+     protected abstract void derivatives(double t, double[] y, double[] u, double[] dydt);
+     
+     /**
+      * returns the exogenous inputs of the model; by default a model has none
+      * @return the inputs, in the order of the input array passed to derivatives
+      */
+     protected InputSeries[] getInputs() {
+         return new InputSeries[0];
+     }
+     
+     /**
+      * @return the keys of the output series: the state variables followed by the inputs
+      */
+     public Comparable[] getOutputKeys() {
+         Comparable[] states = getStateKeys();
+         InputSeries[] inputs = getInputs();
+         Comparable[] keys = new Comparable[states.length + inputs.length];
+         System.arraycopy(states, 0, keys, 0, states.length);
+         for (int i = 0; i < inputs.length; i++) {
+             keys[states.length + i] = inputs[i].getKey();
+         }
+         return keys;
+     }
+     
+     
+     
+    /**
+     * adds an event which changes the state at a fixed time point, e.g. a bolus
+     * @param instant the time of the event
+     * @param action the change of the state
+     */
+    public void addEvent(Instant instant, EventAction action) {
+        ScheduledEvent event = new ScheduledEvent(instant.toEpochMilli(), action);
+        // keep the events sorted, events at the same time in the order they were added
+        int index = events.size();
+        while (index > 0 && events.get(index - 1).getTime() > event.getTime()) {
+            index--;
+        }
+        events.add(index, event);
+    }
+    
+    /**
+     * adds an event which is triggered by the state
+     * @param trigger the trigger and its change of the state
+     */
+    public void addTrigger(StateTrigger trigger) {
+        triggers.add(trigger);
+    }
+    
+    /**
+     * removes all scheduled events and state triggers
+     */
+    public void clearEvents() {
+        events.clear();
+        triggers.clear();
+    }
+    
+    /**
+     * @return the scheduled events sorted by time, unmodifiable
+     */
+    public List<ScheduledEvent> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+    
+    /**
+     * @return the state triggers, unmodifiable
+     */
+    public List<StateTrigger> getTriggers() {
+        return Collections.unmodifiableList(triggers);
+    }
      
     /**
      * @return the deltat
@@ -116,17 +422,48 @@ public abstract class CompartmentModel {
     }
 
     /**
-     * @return the timeperiod
+     * @return a new time period of the start and end of the calculations
      */
     public TimePeriod getTimeperiod() {
-        return timeperiod;
+        return TimePeriods.of(start, end);
     }
 
     /**
      * @param timeperiod the timeperiod to set
      */
     public final void setTimeperiod(TimePeriod timeperiod) {
-        this.timeperiod = timeperiod;
+        setTimeperiod(timeperiod.getStart().getTime(), timeperiod.getEnd().getTime());
+    }
+
+    /**
+     * @param start the start of the calculations
+     * @param end the end of the calculations
+     */
+    public final void setTimeperiod(Instant start, Instant end) {
+        setTimeperiod(start.toEpochMilli(), end.toEpochMilli());
+    }
+
+    /**
+     * @param start the start of the calculations in milliseconds since the epoch
+     * @param end the end of the calculations in milliseconds since the epoch
+     */
+    public final void setTimeperiod(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the start of the calculations in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return start;
+    }
+
+    /**
+     * @return the end of the calculations in milliseconds since the epoch
+     */
+    public long getEndMillis() {
+        return end;
     }
 
     /**
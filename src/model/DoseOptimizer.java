@@ -0,0 +1,349 @@
+/*
+ * -----------------
+ * DoseOptimizer.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Read the time period in milliseconds;
+ * 19-Oct-2026 : Reuse the model copies of the optimization;
+ *
+ */
+package model;
+
+import java.time.Duration;
+import java.util.Arrays;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+
+/**
+ * computes the piecewise constant insulin infusion of a {@link TwoCompartmentInsulin}
+ * model which brings the plasma concentration closest to a target profile, within
+ * bounds on the infusion rate.
+ * <p>
+ * the rate is constant over intervals of a given length from the start of the time
+ * period of the model. the model is linear, so the plasma concentration is the
+ * response without infusion, from the initial state and the boluses of the model,
+ * plus the sum of the responses to the rate of each interval. the response to an
+ * interval is the difference of two shifted copies of the response to a unit step
+ * in the rate, which is computed once and kept until the kinetic parameters, the
+ * time step or the time period change; an optimization then takes one model
+ * evaluation and a small quadratic program, solved by projected coordinate descent.
+ * <p>
+ * the weighted squared deviation from the target is minimised, plus an optional
+ * penalty on the changes of the rate between intervals which smooths the schedule.
+ * the interval must be a multiple of the time step, so that the shifted responses
+ * are exact, and the model must not have state triggers, which are not linear.
+ * an optimizer reuses its copies of the model and is not thread safe
+ * @since 1.0
+ */
+public class DoseOptimizer {
+
+    /** the maximum number of sweeps of the coordinate descent */
+    private static final int MAX_SWEEPS = 10_000;
+
+    /** the model */
+    private final TwoCompartmentInsulin model;
+
+    /** the copies of the model for the response without infusion and the step response */
+    private final TwoCompartmentInsulin free;
+    private final TwoCompartmentInsulin unit;
+
+    /** the length of the intervals of constant rate in milliseconds */
+    private final long interval;
+
+    /** the bounds of the rate in mU/min */
+    private double minRate = 0;
+    private double maxRate = Double.POSITIVE_INFINITY;
+
+    /** the weight of the squared changes of the rate */
+    private double smoothing;
+
+    /** the tolerance of the rate in mU/min at which the descent stops */
+    private double tolerance = 1e-6;
+
+    /** the unit step response: time since the step, plasma concentration per mU/min */
+    private long[] stepTimes;
+    private double[] stepValues;
+
+    /** the kinetic parameters, time step and time period the step response was computed for */
+    private double[] stepKey;
+
+
+    /**
+     * @param model the model; its parameters, initial state, boluses and time period
+     * are read on each optimization
+     * @param interval the length of the intervals of constant rate, a multiple of the time step
+     */
+    public DoseOptimizer(TwoCompartmentInsulin model, Duration interval) {
+        if (model == null) {
+            throw new IllegalArgumentException("Null 'model' argument.");
+        }
+        this.model = model;
+        this.free = new TwoCompartmentInsulin(model);
+        this.unit = new TwoCompartmentInsulin(model);
+        this.interval = interval.toMillis();
+        if (this.interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+    }
+
+
+    /**
+     * computes the schedule for a target profile given as a time series, e.g. of the
+     * plasma concentration wanted at some times; items without a value are skipped
+     * @param target the target plasma concentration in mU/l
+     * @return the schedule
+     */
+    public DoseSchedule optimize(TimeSeries target) {
+        int n = target.getItemCount();
+        long[] times = new long[n];
+        double[] values = new double[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            TimeSeriesDataItem item = target.getDataItem(i);
+            if (item.getValue() != null) {
+                times[size] = item.getPeriod().getFirstMillisecond();
+                values[size] = item.getValue().doubleValue();
+                size++;
+            }
+        }
+        return optimize(Arrays.copyOf(times, size), Arrays.copyOf(values, size), null);
+    }
+
+    /**
+     * computes the schedule for a target profile
+     * @param times the time points of the target in milliseconds since the epoch,
+     * strictly increasing and within the time period of the model
+     * @param targets the target plasma concentration at the time points in mU/l
+     * @param weights the weight of each time point, or null for equal weights
+     * @return the schedule
+     */
+    public DoseSchedule optimize(long[] times, double[] targets, double[] weights) {
+
+        if (times.length != targets.length || (weights != null && weights.length != times.length)) {
+            throw new IllegalArgumentException("The times, targets and weights must have the same length.");
+        }
+        if (!model.getTriggers().isEmpty()) {
+            throw new IllegalStateException("Models with state triggers are not linear.");
+        }
+        if (interval % (model.getDeltat() * 1000L) != 0) {
+            throw new IllegalStateException("The interval must be a multiple of the time step.");
+        }
+        long start = model.getStartMillis();
+        long end = model.getEndMillis();
+        int segments = (int) ((end - start + interval - 1) / interval);
+
+        updateStepResponse(start, end);
+
+        // the response without infusion at the target times
+        free.reset(model);
+        free.setRxiSchedule(new InputSeries(model.getRxiKey(), new long[0], new double[0]));
+        Trajectory response = free.solve(times, new Trajectory());
+
+        // the response of each target time to each interval
+        int n = times.length;
+        double[][] a = new double[n][segments];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < segments; j++) {
+                long from = start + j * interval;
+                long to = Math.min(end, from + interval);
+                a[i][j] = step(times[i] - from) - step(times[i] - to);
+            }
+        }
+
+        // the normal equations H x = g with the penalty on the changes of the rate
+        double[][] h = new double[segments][segments];
+        double[] g = new double[segments];
+        for (int i = 0; i < n; i++) {
+            double w = (weights == null) ? 1 : weights[i];
+            double r = targets[i] - response.getValue(0, i);
+            for (int j = 0; j < segments; j++) {
+                double wa = w * a[i][j];
+                if (wa == 0) {
+                    continue;
+                }
+                g[j] += wa * r;
+                for (int k = j; k < segments; k++) {
+                    h[j][k] += wa * a[i][k];
+                }
+            }
+        }
+        for (int j = 0; j < segments; j++) {
+            for (int k = 0; k < j; k++) {
+                h[j][k] = h[k][j];
+            }
+        }
+        for (int j = 1; j < segments; j++) {
+            h[j][j] += smoothing;
+            h[j - 1][j - 1] += smoothing;
+            h[j][j - 1] -= smoothing;
+            h[j - 1][j] -= smoothing;
+        }
+
+        // projected coordinate descent, keeping h x up to date
+        double[] x = new double[segments];
+        double[] hx = new double[segments];
+        double initial = Math.max(minRate, Math.min(maxRate, 0));
+        if (initial != 0) {
+            Arrays.fill(x, initial);
+            for (int j = 0; j < segments; j++) {
+                for (int k = 0; k < segments; k++) {
+                    hx[j] += h[j][k] * initial;
+                }
+            }
+        }
+        int sweeps = 0;
+        double change;
+        do {
+            change = 0;
+            for (int j = 0; j < segments; j++) {
+                double next;
+                if (h[j][j] > 0) {
+                    next = x[j] + (g[j] - hx[j]) / h[j][j];
+                    next = Math.max(minRate, Math.min(maxRate, next));
+                } else {
+                    // the rate does not affect any target
+                    next = initial;
+                }
+                double delta = next - x[j];
+                if (delta != 0) {
+                    x[j] = next;
+                    for (int k = 0; k < segments; k++) {
+                        hx[k] += h[k][j] * delta;
+                    }
+                    change = Math.max(change, Math.abs(delta));
+                }
+            }
+            sweeps++;
+        } while (change > tolerance && sweeps < MAX_SWEEPS);
+
+        double[] predicted = new double[n];
+        for (int i = 0; i < n; i++) {
+            double p = response.getValue(0, i);
+            for (int j = 0; j < segments; j++) {
+                p += a[i][j] * x[j];
+            }
+            predicted[i] = p;
+        }
+        long[] starts = new long[segments];
+        for (int j = 0; j < segments; j++) {
+            starts[j] = start + j * interval;
+        }
+        return new DoseSchedule(model.getRxiKey(), starts, x, times.clone(), targets.clone(), predicted, sweeps);
+    }
+
+    /**
+     * computes the unit step response unless it is known for the current parameters
+     */
+    private void updateStepResponse(long start, long end) {
+        double[] key = {model.getK1(), model.getK2(), model.getK3(), model.getK4(),
+            model.getVp(), model.getVq(), model.getDeltat(), end - start};
+        if (Arrays.equals(key, stepKey)) {
+            return;
+        }
+        unit.reset(model);
+        unit.clearEvents();
+        unit.setCp_init(0);
+        unit.setCq_init(0);
+        unit.setRxiSchedule(new InputSeries(model.getRxiKey(), new long[] {start}, new double[] {1}));
+        Trajectory response = unit.solve();
+        stepTimes = new long[response.size()];
+        stepValues = new double[response.size()];
+        for (int i = 0; i < stepTimes.length; i++) {
+            stepTimes[i] = response.getTime(i) - start;
+            stepValues[i] = response.getValue(0, i);
+        }
+        stepKey = key;
+    }
+
+    /**
+     * @param elapsed the time since the step in milliseconds
+     * @return the plasma concentration per mU/min, interpolated between the time steps
+     */
+    private double step(long elapsed) {
+        if (elapsed <= 0) {
+            return 0;
+        }
+        int i = Arrays.binarySearch(stepTimes, elapsed);
+        if (i >= 0) {
+            return stepValues[i];
+        }
+        i = -i - 1;
+        if (i >= stepTimes.length) {
+            return stepValues[stepTimes.length - 1];
+        }
+        double s = (double) (elapsed - stepTimes[i - 1]) / (stepTimes[i] - stepTimes[i - 1]);
+        return stepValues[i - 1] + s * (stepValues[i] - stepValues[i - 1]);
+    }
+
+    /**
+     * @param minRate the lowest infusion rate in mU/min, by default 0
+     * @param maxRate the highest infusion rate in mU/min, by default unbounded
+     */
+    public void setBounds(double minRate, double maxRate) {
+        if (!(minRate <= maxRate)) {
+            throw new IllegalArgumentException("The lowest rate must not exceed the highest.");
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+    }
+
+    /**
+     * @return the lowest infusion rate in mU/min
+     */
+    public double getMinRate() {
+        return minRate;
+    }
+
+    /**
+     * @return the highest infusion rate in mU/min
+     */
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * @return the weight of the squared changes of the rate between intervals
+     */
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    /**
+     * @param smoothing the weight of the squared changes of the rate between
+     * intervals, in (mU/l)^2 per (mU/min)^2; 0 for none
+     */
+    public void setSmoothing(double smoothing) {
+        if (smoothing < 0) {
+            throw new IllegalArgumentException("The smoothing must not be negative.");
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * @return the tolerance of the rate in mU/min at which the descent stops
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @param tolerance the tolerance of the rate in mU/min at which the descent stops
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return the length of the intervals of constant rate
+     */
+    public Duration getInterval() {
+        return Duration.ofMillis(interval);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * -----------------
+ * DoseSchedule.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.util.Date;
+import java.util.TimeZone;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.Second;
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * a piecewise constant infusion schedule computed by a {@link DoseOptimizer}, with
+ * the plasma concentration it is predicted to give at the target time points
+ * @since 1.0
+ */
+public class DoseSchedule {
+
+    /** the key of the infusion */
+    private final Comparable key;
+
+    /** the start of each interval in milliseconds since the epoch, and its rate in mU/min */
+    private final long[] starts;
+    private final double[] rates;
+
+    /** the target time points, the targets and the predicted plasma concentrations */
+    private final long[] times;
+    private final double[] targets;
+    private final double[] predicted;
+
+    /** the number of sweeps of the coordinate descent */
+    private final int sweeps;
+
+
+    DoseSchedule(Comparable key, long[] starts, double[] rates, long[] times, double[] targets,
+            double[] predicted, int sweeps) {
+        this.key = key;
+        this.starts = starts;
+        this.rates = rates;
+        this.times = times;
+        this.targets = targets;
+        this.predicted = predicted;
+        this.sweeps = sweeps;
+    }
+
+
+    /**
+     * @return the number of intervals
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @param index the index of the interval
+     * @return the start of the interval in milliseconds since the epoch
+     */
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @param index the index of the interval
+     * @return the infusion rate in the interval in mU/min
+     */
+    public double getRate(int index) {
+        return rates[index];
+    }
+
+    /**
+     * @param index the index of the target time point
+     * @return the plasma concentration the schedule is predicted to give at the time point
+     */
+    public double getPredicted(int index) {
+        return predicted[index];
+    }
+
+    /**
+     * @return the root mean square deviation of the prediction from the target
+     */
+    public double getRmsError() {
+        double sum = 0;
+        for (int i = 0; i < times.length; i++) {
+            sum += (predicted[i] - targets[i]) * (predicted[i] - targets[i]);
+        }
+        return (times.length == 0) ? 0 : Math.sqrt(sum / times.length);
+    }
+
+    /**
+     * @return the number of sweeps of the coordinate descent
+     */
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * @return the schedule as an input series
+     */
+    public InputSeries toInputSeries() {
+        return new InputSeries(key, starts, rates);
+    }
+
+    /**
+     * @param zone the time zone of the periods
+     * @return the schedule as a time series of the infusion rate, one item per interval
+     */
+    public TimeSeries toTimeSeries(TimeZone zone) {
+        TimeSeries series = new TimeSeries(key);
+        for (int i = 0; i < starts.length; i++) {
+            series.add(RegularTimePeriod.createInstance(Second.class, new Date(starts[i]), zone), rates[i], false);
+        }
+        return series;
+    }
+
+    /**
+     * sets the schedule as the infusion of a model, e.g. to evaluate it
+     * @param model the model
+     */
+    public void applyTo(TwoCompartmentInsulin model) {
+        model.setRxi(toTimeSeries(model.getZone()));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * -----------------
+ * EvaluationMetrics.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+/**
+ * the metrics of the evaluations of one model class, kept in the default
+ * {@link MetricsRegistry} under <code>model.&lt;class name&gt;.*</code>:
+ * the evaluation latency in nanoseconds, the number of evaluations and solver
+ * steps, the steps per second, and the bytes allocated by evaluations where
+ * the JVM can measure them
+ * @since 1.0
+ */
+public final class EvaluationMetrics {
+
+    private static final Map<Class<?>, EvaluationMetrics> BY_CLASS = new ConcurrentHashMap<>();
+
+    /** measures allocations of the current thread, null if not supported */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    private static volatile boolean enabled = true;
+
+    private final Histogram latency;
+    private final Counter evaluations;
+    private final Counter steps;
+    private final Counter allocatedBytes;
+
+
+    private EvaluationMetrics(String prefix, MetricsRegistry registry) {
+        latency = registry.histogram(prefix + ".latency");
+        evaluations = registry.counter(prefix + ".evaluations");
+        steps = registry.counter(prefix + ".steps");
+        allocatedBytes = registry.counter(prefix + ".allocatedBytes");
+        registry.gauge(prefix + ".stepsPerSecond", () -> {
+            long nanos = latency.getSum();
+            return (nanos == 0) ? 0 : steps.getCount() * 1e9 / nanos;
+        });
+    }
+
+    /**
+     * @param modelClass the model class
+     * @return the metrics of the model class
+     */
+    public static EvaluationMetrics of(Class<?> modelClass) {
+        EvaluationMetrics metrics = BY_CLASS.get(modelClass);
+        if (metrics == null) {
+            metrics = BY_CLASS.computeIfAbsent(modelClass,
+                    c -> new EvaluationMetrics("model." + c.getSimpleName(), MetricsRegistry.getDefault()));
+        }
+        return metrics;
+    }
+
+    /**
+     * @return true if evaluations are measured
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled false to stop measuring evaluations, e.g. for benchmarks
+     */
+    public static void setEnabled(boolean enabled) {
+        EvaluationMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if unknown
+     */
+    public static long allocatedBytes() {
+        return (ALLOCATIONS == null || !enabled) ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * records one evaluation
+     * @param nanos the duration of the evaluation in nanoseconds
+     * @param stepCount the number of solver steps
+     * @param allocatedBefore the result of {@link #allocatedBytes()} before the evaluation
+     */
+    public void record(long nanos, long stepCount, long allocatedBefore) {
+        latency.record(nanos);
+        evaluations.increment();
+        steps.add(stepCount);
+        if (allocatedBefore >= 0) {
+            allocatedBytes.add(Math.max(0, allocatedBytes() - allocatedBefore));
+        }
+    }
+
+    /**
+     * @return the histogram of evaluation latencies in nanoseconds
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the number of evaluations
+     */
+    public Counter getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return the number of solver steps
+     */
+    public Counter getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the number of bytes allocated by evaluations
+     */
+    public Counter getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * -----------------
+ * EvaluationPyramid.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.time.Duration;
+import java.util.Arrays;
+import org.jfree.data.xy.YIntervalDataItem;
+import org.jfree.data.xy.YIntervalSeries;
+import org.jfree.data.xy.YIntervalSeriesCollection;
+
+/**
+ * the minimum, maximum and mean of each output series of a model evaluation per
+ * time bucket, at several resolutions, by default 1 minute, 15 minutes and 1 hour.
+ * <p>
+ * the pyramid is an {@link OutputSink}, so it is built by the {@link Solver} in the
+ * same pass as the trajectory. the buckets of a level are aligned to multiples of
+ * its width since the epoch, and each width is a multiple of the one before, so
+ * every bucket is the union of buckets of the finer levels. charts of long
+ * evaluations can then pick the coarsest level which still resolves the visible
+ * range, and statistics over a range are combined from the coarsest buckets which
+ * fit in it, which takes time in the number of buckets rather than of time points
+ * @since 1.0
+ */
+public class EvaluationPyramid implements OutputSink {
+
+    /** the default bucket widths */
+    public static final Duration[] DEFAULT_LEVELS = {Duration.ofMinutes(1), Duration.ofMinutes(15), Duration.ofHours(1)};
+
+    /**
+     * the minimum, maximum and mean of a series over a time range
+     */
+    public static final class Summary {
+
+        private final double min;
+        private final double max;
+        private final double sum;
+        private final long count;
+
+        private Summary(double min, double max, double sum, long count) {
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+            this.count = count;
+        }
+
+        /**
+         * @return the minimum, NaN if there are no values
+         */
+        public double getMin() {
+            return (count == 0) ? Double.NaN : min;
+        }
+
+        /**
+         * @return the maximum, NaN if there are no values
+         */
+        public double getMax() {
+            return (count == 0) ? Double.NaN : max;
+        }
+
+        /**
+         * @return the mean of the values at the time points, NaN if there are none
+         */
+        public double getMean() {
+            return (count == 0) ? Double.NaN : sum / count;
+        }
+
+        /**
+         * @return the number of time points
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /** the bucket widths in milliseconds, increasing */
+    private final long[] widths;
+
+    /** the keys of the output series */
+    private Comparable[] keys = new Comparable[0];
+
+    /** the start of the first bucket of each level */
+    private final long[] origins;
+
+    /** the number of buckets of each level */
+    private final int[] sizes;
+
+    /** the minimum, maximum and sum per level, series and bucket, and the count per level and bucket */
+    private final double[][][] min;
+    private final double[][][] max;
+    private final double[][][] sum;
+    private final int[][] counts;
+
+    /** the last time point, which is added when the next one arrives or the pyramid is read */
+    private double[] pending = new double[0];
+    private long pendingTime;
+    private boolean hasPending;
+
+
+    /**
+     * creates a pyramid with the default levels
+     */
+    public EvaluationPyramid() {
+        this(DEFAULT_LEVELS);
+    }
+
+    /**
+     * @param levels the bucket widths, increasing, each a multiple of the one before
+     */
+    public EvaluationPyramid(Duration... levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("At least one level is needed.");
+        }
+        widths = new long[levels.length];
+        for (int l = 0; l < levels.length; l++) {
+            widths[l] = levels[l].toMillis();
+            if (widths[l] <= 0 || (l > 0 && (widths[l] <= widths[l - 1] || widths[l] % widths[l - 1] != 0))) {
+                throw new IllegalArgumentException("The widths must be increasing and each a multiple of the one before.");
+            }
+        }
+        origins = new long[levels.length];
+        sizes = new int[levels.length];
+        min = new double[levels.length][][];
+        max = new double[levels.length][][];
+        sum = new double[levels.length][][];
+        counts = new int[levels.length][0];
+        for (int l = 0; l < levels.length; l++) {
+            min[l] = new double[0][];
+            max[l] = new double[0][];
+            sum[l] = new double[0][];
+        }
+    }
+
+
+    @Override
+    public void reset(Comparable[] keys, int capacity) {
+        this.keys = keys;
+        if (pending.length != keys.length) {
+            pending = new double[keys.length];
+        }
+        hasPending = false;
+        for (int l = 0; l < widths.length; l++) {
+            sizes[l] = 0;
+            if (min[l].length != keys.length) {
+                min[l] = new double[keys.length][0];
+                max[l] = new double[keys.length][0];
+                sum[l] = new double[keys.length][0];
+                counts[l] = new int[0];
+            }
+        }
+    }
+
+    @Override
+    public void add(long millis, double[] state, double[] inputs) {
+        commit();
+        pendingTime = millis;
+        replaceLast(state, inputs);
+        hasPending = true;
+    }
+
+    @Override
+    public void replaceLast(double[] state, double[] inputs) {
+        System.arraycopy(state, 0, pending, 0, state.length);
+        System.arraycopy(inputs, 0, pending, state.length, inputs.length);
+    }
+
+    /**
+     * adds the pending time point to the buckets of all levels
+     */
+    private void commit() {
+        if (!hasPending) {
+            return;
+        }
+        hasPending = false;
+        for (int l = 0; l < widths.length; l++) {
+            if (sizes[l] == 0) {
+                origins[l] = Math.floorDiv(pendingTime, widths[l]) * widths[l];
+            }
+            int bucket = (int) ((pendingTime - origins[l]) / widths[l]);
+            if (bucket >= sizes[l]) {
+                grow(l, bucket + 1);
+            }
+            for (int s = 0; s < keys.length; s++) {
+                double v = pending[s];
+                if (counts[l][bucket] == 0) {
+                    min[l][s][bucket] = v;
+                    max[l][s][bucket] = v;
+                } else {
+                    min[l][s][bucket] = Math.min(min[l][s][bucket], v);
+                    max[l][s][bucket] = Math.max(max[l][s][bucket], v);
+                }
+                sum[l][s][bucket] += v;
+            }
+            counts[l][bucket]++;
+        }
+    }
+
+    private void grow(int level, int size) {
+        if (size > counts[level].length) {
+            int capacity = Math.max(size, Math.max(16, counts[level].length + (counts[level].length >> 1)));
+            counts[level] = Arrays.copyOf(counts[level], capacity);
+            for (int s = 0; s < keys.length; s++) {
+                min[level][s] = Arrays.copyOf(min[level][s], capacity);
+                max[level][s] = Arrays.copyOf(max[level][s], capacity);
+                sum[level][s] = Arrays.copyOf(sum[level][s], capacity);
+            }
+        }
+        for (int b = sizes[level]; b < size; b++) {
+            counts[level][b] = 0;
+            for (int s = 0; s < keys.length; s++) {
+                sum[level][s][b] = 0;
+            }
+        }
+        sizes[level] = size;
+    }
+
+    /**
+     * @return the number of levels
+     */
+    public int getLevelCount() {
+        return widths.length;
+    }
+
+    /**
+     * @param level the index of the level, 0 for the finest
+     * @return the bucket width of the level
+     */
+    public Duration getWidth(int level) {
+        return Duration.ofMillis(widths[level]);
+    }
+
+    /**
+     * @param level the index of the level
+     * @return the number of buckets of the level
+     */
+    public int getBucketCount(int level) {
+        commit();
+        return sizes[level];
+    }
+
+    /**
+     * @param level the index of the level
+     * @param bucket the index of the bucket
+     * @return the start of the bucket in milliseconds since the epoch
+     */
+    public long getBucketStart(int level, int bucket) {
+        commit();
+        return origins[level] + bucket * widths[level];
+    }
+
+    /**
+     * @param level the index of the level
+     * @param series the index of the series
+     * @param bucket the index of the bucket
+     * @return the minimum of the series in the bucket, NaN if the bucket is empty
+     */
+    public double getMin(int level, int series, int bucket) {
+        commit();
+        return (counts[level][bucket] == 0) ? Double.NaN : min[level][series][bucket];
+    }
+
+    /**
+     * @param level the index of the level
+     * @param series the index of the series
+     * @param bucket the index of the bucket
+     * @return the maximum of the series in the bucket, NaN if the bucket is empty
+     */
+    public double getMax(int level, int series, int bucket) {
+        commit();
+        return (counts[level][bucket] == 0) ? Double.NaN : max[level][series][bucket];
+    }
+
+    /**
+     * @param level the index of the level
+     * @param series the index of the series
+     * @param bucket the index of the bucket
+     * @return the mean of the series in the bucket, NaN if the bucket is empty
+     */
+    public double getMean(int level, int series, int bucket) {
+        commit();
+        int count = counts[level][bucket];
+        return (count == 0) ? Double.NaN : sum[level][series][bucket] / count;
+    }
+
+    /**
+     * selects the level to show a time range with, e.g. on a chart of a given width
+     * @param from the start of the range in milliseconds since the epoch
+     * @param to the end of the range
+     * @param maxBuckets the maximum number of buckets wanted, e.g. the width in pixels
+     * @return the finest level with at most maxBuckets buckets in the range, or
+     * the coarsest level if all have more
+     */
+    public int selectLevel(long from, long to, int maxBuckets) {
+        for (int l = 0; l < widths.length; l++) {
+            if ((to - from) / widths[l] + 1 <= maxBuckets) {
+                return l;
+            }
+        }
+        return widths.length - 1;
+    }
+
+    /**
+     * summarises a series over a time range from the coarsest buckets which fit in
+     * the range; the range is widened to whole buckets of the finest level
+     * @param series the index of the series
+     * @param from the start of the range in milliseconds since the epoch
+     * @param to the end of the range, exclusive
+     * @return the summary
+     */
+    public Summary summarize(int series, long from, long to) {
+        commit();
+        double[] acc = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0};
+        if (sizes[0] > 0) {
+            long start = Math.floorDiv(from - origins[0], widths[0]) * widths[0] + origins[0];
+            long end = -Math.floorDiv(-(to - origins[0]), widths[0]) * widths[0] + origins[0];
+            accumulate(widths.length - 1, series, start, end, acc);
+        }
+        return new Summary(acc[0], acc[1], acc[2], (long) acc[3]);
+    }
+
+    /**
+     * adds the buckets of a level fully inside [from, to) and covers the parts on
+     * either side with the finer levels; from and to are bucket bounds of level 0
+     */
+    private void accumulate(int level, int series, long from, long to, double[] acc) {
+        if (from >= to) {
+            return;
+        }
+        long width = widths[level];
+        long first = -Math.floorDiv(-(from - origins[level]), width);
+        long last = Math.floorDiv(to - origins[level], width);
+        if (level > 0) {
+            if (first >= last) {
+                accumulate(level - 1, series, from, to, acc);
+                return;
+            }
+            accumulate(level - 1, series, from, origins[level] + first * width, acc);
+            accumulate(level - 1, series, origins[level] + last * width, to, acc);
+        }
+        for (long b = Math.max(0, first); b < Math.min(last, sizes[level]); b++) {
+            int bucket = (int) b;
+            int count = counts[level][bucket];
+            if (count > 0) {
+                acc[0] = Math.min(acc[0], min[level][series][bucket]);
+                acc[1] = Math.max(acc[1], max[level][series][bucket]);
+                acc[2] += sum[level][series][bucket];
+                acc[3] += count;
+            }
+        }
+    }
+
+    /**
+     * creates a dataset of the buckets of a level within a time range, with the
+     * mean of each bucket as the y value and the minimum and maximum as the interval,
+     * and the start of the bucket in milliseconds as the x value, e.g. for a
+     * deviation chart
+     * @param level the index of the level
+     * @param from the start of the range in milliseconds since the epoch
+     * @param to the end of the range, exclusive
+     * @return the dataset, with one series per output series
+     */
+    public YIntervalSeriesCollection toDataset(int level, long from, long to) {
+        commit();
+        YIntervalSeriesCollection dataset = new YIntervalSeriesCollection();
+        int first = (int) Math.max(0, Math.floorDiv(from - origins[level], widths[level]));
+        int last = (int) Math.min(sizes[level], Math.max(0, -Math.floorDiv(-(to - origins[level]), widths[level])));
+        for (int s = 0; s < keys.length; s++) {
+            YIntervalSeries series = new YIntervalSeries(keys[s]);
+            for (int b = first; b < last; b++) {
+                if (counts[level][b] > 0) {
+                    series.add(new YIntervalDataItem(origins[level] + b * widths[level],
+                            sum[level][s][b] / counts[level][b], min[level][s][b], max[level][s][b]), false);
+                }
+            }
+            dataset.addSeries(series);
+        }
+        return dataset;
+    }
+
+    /**
+     * @return the number of output series
+     */
+    public int getSeriesCount() {
+        return keys.length;
+    }
+
+    /**
+     * @param series the index of the series
+     * @return the key of the series
+     */
+    public Comparable getKey(int series) {
+        return keys[series];
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * -----------------
+ * EventAction.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * an instantaneous change of the state of a model at a discrete event,
+ * e.g. a bolus injection adding an amount of insulin to the plasma
+ * @since 1.0
+ */
+public interface EventAction {
+
+    /**
+     * changes the state at the event
+     * @param millis the time of the event in milliseconds since the epoch
+     * @param y the state variables of the model, changed in place
+     */
+    void apply(long millis, double[] y);
+}
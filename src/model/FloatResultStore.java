@@ -0,0 +1,375 @@
+/*
+ * -----------------
+ * FloatResultStore.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Measure the rounding of all stored values instead of solving a sample again;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+
+/**
+ * stores the output series of the members of a population evaluation as floats,
+ * e.g. for large cohorts whose results are reported to a few significant digits,
+ * in half the memory of doubles.
+ * <p>
+ * the models are still solved in double precision; only the stored results are
+ * rounded. the values are kept as one array per series, time point by time point,
+ * with the members of a time point next to each other, so statistics over the
+ * population at a time point read contiguous memory.
+ * <p>
+ * the only error is therefore the rounding to float, at most 2<sup>-24</sup>
+ * relative to the double precision value for values in the normal range of float;
+ * smaller values lose more precision, and larger values overflow. as each member
+ * is stored, the error of each of its values against the double precision
+ * trajectory is measured in the same pass, and {@link #getAccuracy()} reports the
+ * largest error over all members stored
+ * @since 1.0
+ */
+public class FloatResultStore {
+
+    /**
+     * the accuracy of the stored values against a double precision evaluation
+     */
+    public static final class Accuracy {
+
+        private final int sampleSize;
+        private final double maxRelativeError;
+        private final double maxAbsoluteError;
+        private final int member;
+        private final int series;
+        private final int point;
+
+        Accuracy(int sampleSize, double maxRelativeError, double maxAbsoluteError, int member, int series, int point) {
+            this.sampleSize = sampleSize;
+            this.maxRelativeError = maxRelativeError;
+            this.maxAbsoluteError = maxAbsoluteError;
+            this.member = member;
+            this.series = series;
+            this.point = point;
+        }
+
+        /**
+         * @return the number of members measured
+         */
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * @return the largest error relative to the double precision value; values
+         * which are zero in double precision count only if the stored value is not zero
+         */
+        public double getMaxRelativeError() {
+            return maxRelativeError;
+        }
+
+        /**
+         * @return the largest absolute error
+         */
+        public double getMaxAbsoluteError() {
+            return maxAbsoluteError;
+        }
+
+        /**
+         * @return the member with the largest relative error, -1 if there is no error
+         */
+        public int getMember() {
+            return member;
+        }
+
+        /**
+         * @return the series with the largest relative error, -1 if there is no error
+         */
+        public int getSeries() {
+            return series;
+        }
+
+        /**
+         * @return the time point with the largest relative error, -1 if there is no error
+         */
+        public int getPoint() {
+            return point;
+        }
+
+        /**
+         * @param tolerance the largest relative error allowed
+         * @return true if the largest relative error is within the tolerance
+         */
+        public boolean isWithin(double tolerance) {
+            return maxRelativeError <= tolerance;
+        }
+
+        @Override
+        public String toString() {
+            return "max relative error " + maxRelativeError + " (member " + member + ", series " + series
+                    + ", point " + point + "), max absolute error " + maxAbsoluteError
+                    + " in " + sampleSize + " members";
+        }
+    }
+
+    /** the keys of the series */
+    private final Comparable[] keys;
+
+    /** the time points in milliseconds since the epoch */
+    private final long[] times;
+
+    /** the number of members */
+    private final int members;
+
+    /** the values of each series, time point by time point and member by member */
+    private final float[][] values;
+
+    /**
+     * the largest relative and absolute rounding error of each member, and where the
+     * relative error is largest as series * points + point; -1 if there is no error
+     * and -2 if the member has not been stored
+     */
+    private final double[] memberRelative;
+    private final double[] memberAbsolute;
+    private final int[] memberWorst;
+
+
+    /**
+     * @param keys the keys of the series
+     * @param times the time points in milliseconds since the epoch, shared by all members
+     * @param members the number of members
+     */
+    public FloatResultStore(Comparable[] keys, long[] times, int members) {
+        if (keys == null || times == null) {
+            throw new IllegalArgumentException("Null 'keys' or 'times' argument.");
+        }
+        if (members < 0 || (long) times.length * members > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The values of a series must fit in one array.");
+        }
+        this.keys = keys.clone();
+        this.times = times.clone();
+        this.members = members;
+        this.values = new float[keys.length][times.length * members];
+        this.memberRelative = new double[members];
+        this.memberAbsolute = new double[members];
+        this.memberWorst = new int[members];
+        Arrays.fill(memberWorst, -2);
+    }
+
+    /**
+     * creates a store for the time points and outputs of the template of an evaluator
+     * @param evaluator the evaluator
+     * @param members the number of members
+     * @return the store
+     */
+    public static FloatResultStore of(BatchEvaluator evaluator, int members) {
+        TwoCompartmentInsulin template = evaluator.getTemplate();
+        Trajectory reference = (evaluator.getOutputInterval() == null)
+                ? template.solve() : template.solve(evaluator.getOutputInterval(), new Trajectory());
+        Comparable[] keys = new Comparable[reference.getSeriesCount()];
+        for (int s = 0; s < keys.length; s++) {
+            keys[s] = reference.getKey(s);
+        }
+        long[] times = new long[reference.size()];
+        System.arraycopy(reference.getTimes(), 0, times, 0, times.length);
+        return new FloatResultStore(keys, times, members);
+    }
+
+
+    /**
+     * evaluates all members and stores their results
+     * @param evaluator the evaluator, with the time points of this store
+     * @param setup sets up the model of each member
+     * @return the accuracy of the stored values, null if there are no members
+     */
+    public Accuracy evaluate(BatchEvaluator evaluator, BatchEvaluator.MemberSetup setup) {
+        evaluator.evaluate(0, members, setup, this::put);
+        return getAccuracy();
+    }
+
+    private void checkShape(int member, Trajectory trajectory) {
+        if (trajectory.size() != times.length || trajectory.getSeriesCount() != keys.length) {
+            throw new IllegalArgumentException("The trajectory of member " + member + " does not match the store.");
+        }
+    }
+
+    /**
+     * stores the output series of a member, rounded to floats, and measures the
+     * rounding error; can be used as the {@link BatchEvaluator.MemberSink} of a
+     * population evaluation
+     * @param member the index of the member
+     * @param trajectory the output of the member, with the time points of the store
+     */
+    public void put(int member, Trajectory trajectory) {
+        checkShape(member, trajectory);
+        double relative = 0;
+        double absolute = 0;
+        int worst = -1;
+        for (int s = 0; s < keys.length; s++) {
+            double[] source = trajectory.getValues(s);
+            float[] target = values[s];
+            for (int i = 0, j = member; i < times.length; i++, j += members) {
+                float rounded = (float) source[i];
+                target[j] = rounded;
+                double error = Math.abs(rounded - source[i]);
+                if (!(error > 0)) {
+                    continue;
+                }
+                absolute = Math.max(absolute, error);
+                double magnitude = Math.abs(source[i]);
+                double r = (magnitude == 0) ? Double.POSITIVE_INFINITY : error / magnitude;
+                if (r > relative) {
+                    relative = r;
+                    worst = s * times.length + i;
+                }
+            }
+        }
+        memberRelative[member] = relative;
+        memberAbsolute[member] = absolute;
+        memberWorst[member] = worst;
+    }
+
+    /**
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param point the index of the time point
+     * @return the value
+     */
+    public float getValue(int member, int series, int point) {
+        return values[series][point * members + member];
+    }
+
+    /**
+     * sets a value, which is not included in the accuracy
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param point the index of the time point
+     * @param value the value
+     */
+    public void setValue(int member, int series, int point, float value) {
+        values[series][point * members + member] = value;
+    }
+
+    /**
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param out the array for the values at all time points, or null
+     * @return the values of the series of the member
+     */
+    public float[] getValues(int member, int series, float[] out) {
+        float[] result = (out == null) ? new float[times.length] : out;
+        float[] source = values[series];
+        for (int i = 0, j = member; i < times.length; i++, j += members) {
+            result[i] = source[j];
+        }
+        return result;
+    }
+
+    /**
+     * @param series the index of the series
+     * @param point the index of the time point
+     * @param out the array for the values of all members, or null
+     * @return the values of all members at the time point
+     */
+    public float[] getMembers(int series, int point, float[] out) {
+        float[] result = (out == null) ? new float[members] : out;
+        System.arraycopy(values[series], point * members, result, 0, members);
+        return result;
+    }
+
+    /**
+     * @param series the index of the series
+     * @return the mean over all members at each time point
+     */
+    public double[] getMean(int series) {
+        double[] result = new double[times.length];
+        float[] source = values[series];
+        for (int i = 0; i < times.length; i++) {
+            double sum = 0;
+            for (int j = i * members, end = j + members; j < end; j++) {
+                sum += source[j];
+            }
+            result[i] = sum / members;
+        }
+        return result;
+    }
+
+    /**
+     * @return the largest rounding error of the members stored so far, against their
+     * double precision trajectories; null if no member has been stored
+     */
+    public Accuracy getAccuracy() {
+        int measured = 0;
+        double relative = 0;
+        double absolute = 0;
+        int member = -1;
+        int worst = -1;
+        for (int m = 0; m < members; m++) {
+            if (memberWorst[m] == -2) {
+                continue;
+            }
+            measured++;
+            absolute = Math.max(absolute, memberAbsolute[m]);
+            if (memberRelative[m] > relative) {
+                relative = memberRelative[m];
+                member = m;
+                worst = memberWorst[m];
+            }
+        }
+        if (measured == 0) {
+            return null;
+        }
+        return (worst < 0)
+                ? new Accuracy(measured, relative, absolute, -1, -1, -1)
+                : new Accuracy(measured, relative, absolute, member, worst / times.length, worst % times.length);
+    }
+
+    /**
+     * @return the number of members
+     */
+    public int getMemberCount() {
+        return members;
+    }
+
+    /**
+     * @return the number of series
+     */
+    public int getSeriesCount() {
+        return keys.length;
+    }
+
+    /**
+     * @param series the index of a series
+     * @return the key of the series
+     */
+    public Comparable getKey(int series) {
+        return keys[series];
+    }
+
+    /**
+     * @return the number of time points
+     */
+    public int getPointCount() {
+        return times.length;
+    }
+
+    /**
+     * @param point the index of a time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int point) {
+        return times[point];
+    }
+
+    /**
+     * @return the size of the values in bytes
+     */
+    public long getByteSize() {
+        return (long) keys.length * times.length * members * Float.BYTES;
+    }
+}
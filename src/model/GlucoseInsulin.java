@@ -0,0 +1,274 @@
+/*
+ * -----------------
+ * GlucoseInsulin.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Copy constructor;
+ * 19-Oct-2026 : Glucose appearance schedule without a time series;
+ * 19-Oct-2026 : Keep the schedule when the time series is created;
+ * 19-Oct-2026 : Reset to a copy of another model;
+ *
+ */
+package model;
+
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * the two compartment insulin kinetics coupled to the plasma glucose concentration.
+ * glucose is cleared independently of insulin and taken up depending on the
+ * interstitial insulin concentration, with saturation at high insulin:
+ * <pre>
+ *   dG/dt = - pG*G - SI*G*Q/(1 + alphaG*Q) + (P + EGP - CNS)/(60*VG)
+ * </pre>
+ * where Q is the interstitial insulin concentration and P the glucose appearance,
+ * e.g. from enteral or parenteral nutrition. as in {@link TwoCompartmentInsulin}
+ * the rate constants are given per second and the inputs per minute.
+ * the default parameters are typical values for a critically ill adult
+ * @since 1.0
+ */
+public class GlucoseInsulin extends TwoCompartmentInsulin {
+
+    /** glucose clearance independent of insulin, 1/s */
+    private double pG = 0.006 / 60;
+
+    /** insulin sensitivity, l/(mU*s) */
+    private double si = 0.0005 / 60;
+
+    /** saturation of insulin dependent uptake, l/mU */
+    private double alphaG = 1.0 / 65;
+
+    /** endogenous glucose production, mmol/min */
+    private double egp = 1.16;
+
+    /** glucose uptake by the central nervous system, mmol/min */
+    private double cns = 0.3;
+
+    /** glucose distribution volume, liters */
+    private double vg = 13.3;
+
+    /** initial plasma glucose concentration, mmol/l */
+    private double g_init = 5.0;
+
+    Comparable key_g = "Plasma glucose concentration";
+    Comparable key_p = "Glucose appearance";
+
+    /**
+     * the glucose appearance in mmol/min as time series, indexed for the solver
+     */
+    private final IndexedInput p = new IndexedInput(key_p);
+
+
+    public GlucoseInsulin() {
+        super();
+    }
+
+    /**
+     * creates a copy of a model with the same parameters, inputs and events.
+     * the input time series and schedules are shared
+     * @param other the model to copy
+     */
+    public GlucoseInsulin(GlucoseInsulin other) {
+        super(other);
+        copyGlucose(other);
+    }
+
+    /**
+     * makes this model a copy of another glucose model, as the copy constructor does
+     * @param other the model to copy, a {@link GlucoseInsulin}
+     */
+    @Override
+    void reset(TwoCompartmentInsulin other) {
+        if (!(other instanceof GlucoseInsulin)) {
+            throw new IllegalArgumentException("A glucose model can only be reset to a glucose model.");
+        }
+        super.reset(other);
+        copyGlucose((GlucoseInsulin) other);
+    }
+
+    private void copyGlucose(GlucoseInsulin other) {
+        setPG(other.getPG());
+        setSI(other.getSI());
+        setAlphaG(other.getAlphaG());
+        setEgp(other.getEgp());
+        setCns(other.getCns());
+        setVg(other.getVg());
+        setG_init(other.getG_init());
+        p.copy(other.p);
+    }
+
+
+    @Override
+    protected Comparable[] getStateKeys() {
+        return new Comparable[] {key_cp, key_cq, key_g};
+    }
+
+    @Override
+    protected void initialState(double[] y) {
+        super.initialState(y);
+        y[2] = getG_init();
+    }
+
+    @Override
+    protected InputSeries[] getInputs() {
+        InputSeries[] insulin = super.getInputs();
+        InputSeries[] inputs = new InputSeries[insulin.length + 1];
+        System.arraycopy(insulin, 0, inputs, 0, insulin.length);
+        inputs[insulin.length] = p.get();
+        return inputs;
+    }
+
+    /**
+     * calculates the changes of the insulin concentrations as in the two compartment
+     * model, and the change of the plasma glucose concentration (mmol/l/s)
+     * @param t the time in seconds since the start
+     * @param y the insulin concentrations (mU/l) and the glucose concentration (mmol/l)
+     * @param u the insulin infusion (mU/min) and the glucose appearance (mmol/min)
+     * @param dydt the changes of the concentrations per second
+     */
+    @Override
+    protected void derivatives(double t, double[] y, double[] u, double[] dydt) {
+        super.derivatives(t, y, u, dydt);
+        double q = y[1];
+        double g = y[2];
+        dydt[2] = -pG * g - si * g * q / (1 + alphaG * q) + (u[1] + egp - cns) / (60 * vg);
+    }
+
+
+    /**
+     * @return the glucose clearance independent of insulin, 1/s
+     */
+    public double getPG() {
+        return pG;
+    }
+
+    /**
+     * @param pG the glucose clearance independent of insulin to set, 1/s
+     */
+    public void setPG(double pG) {
+        this.pG = pG;
+    }
+
+    /**
+     * @return the insulin sensitivity, l/(mU*s)
+     */
+    public double getSI() {
+        return si;
+    }
+
+    /**
+     * @param si the insulin sensitivity to set, l/(mU*s)
+     */
+    public void setSI(double si) {
+        this.si = si;
+    }
+
+    /**
+     * @return the saturation of insulin dependent uptake, l/mU
+     */
+    public double getAlphaG() {
+        return alphaG;
+    }
+
+    /**
+     * @param alphaG the saturation of insulin dependent uptake to set, l/mU
+     */
+    public void setAlphaG(double alphaG) {
+        this.alphaG = alphaG;
+    }
+
+    /**
+     * @return the endogenous glucose production, mmol/min
+     */
+    public double getEgp() {
+        return egp;
+    }
+
+    /**
+     * @param egp the endogenous glucose production to set, mmol/min
+     */
+    public void setEgp(double egp) {
+        this.egp = egp;
+    }
+
+    /**
+     * @return the glucose uptake by the central nervous system, mmol/min
+     */
+    public double getCns() {
+        return cns;
+    }
+
+    /**
+     * @param cns the glucose uptake by the central nervous system to set, mmol/min
+     */
+    public void setCns(double cns) {
+        this.cns = cns;
+    }
+
+    /**
+     * @return the glucose distribution volume, liters
+     */
+    public double getVg() {
+        return vg;
+    }
+
+    /**
+     * @param vg the glucose distribution volume to set, liters
+     */
+    public void setVg(double vg) {
+        this.vg = vg;
+    }
+
+    /**
+     * @return the initial plasma glucose concentration, mmol/l
+     */
+    public double getG_init() {
+        return g_init;
+    }
+
+    /**
+     * @param g_init the initial plasma glucose concentration to set, mmol/l
+     */
+    public void setG_init(double g_init) {
+        this.g_init = g_init;
+    }
+
+    /**
+     * returns the glucose appearance time series, created empty on first use; a
+     * schedule set by {@link #setGlucoseAppearanceSchedule(InputSeries)} is not in
+     * the time series, but stays in use until the time series changes
+     * @return the glucose appearance in mmol/min
+     */
+    public TimeSeries getGlucoseAppearance() {
+        return p.getSeries();
+    }
+
+    /**
+     * @param appearance the glucose appearance in mmol/min to set
+     */
+    public void setGlucoseAppearance(TimeSeries appearance) {
+        this.p.setSeries(appearance);
+    }
+
+    /**
+     * sets the glucose appearance in mmol/min without a time series; the schedule
+     * is used until the glucose appearance time series is set again or changes
+     * @param schedule the glucose appearance
+     */
+    public void setGlucoseAppearanceSchedule(InputSeries schedule) {
+        this.p.set(schedule);
+    }
+
+    /**
+     * @return the glucose appearance in mmol/min as used by the solver
+     */
+    public InputSeries getGlucoseAppearanceSchedule() {
+        return p.get();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * -----------------
+ * IndexedInput.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Create the time series on first use;
+ * 19-Oct-2026 : Keep a set input series when the time series is created;
+ * 19-Oct-2026 : Copies read through the copied input instead of listening;
+ *
+ */
+package model;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesChangeListener;
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * keeps the {@link InputSeries} of a model input given as a {@link TimeSeries}.
+ * the input series is built on first use and reused until the time series changes,
+ * so that repeated evaluations of a model do not index their inputs again.
+ * the time series is only created when it is asked for, so inputs given as
+ * schedules do not load the chart library. a copy reads the time series and the
+ * input series of the input it copies, without a listener of its own, so that
+ * short-lived copies of a model leave nothing behind on the shared time series.
+ * hits and misses are counted in <code>model.inputIndex.hits</code> and
+ * <code>model.inputIndex.misses</code>
+ * @since 1.0
+ */
+final class IndexedInput {
+
+    private static final Counter HITS = MetricsRegistry.getDefault().counter("model.inputIndex.hits");
+    private static final Counter MISSES = MetricsRegistry.getDefault().counter("model.inputIndex.misses");
+
+    /** the key of the input */
+    private final Comparable key;
+
+    /** the time series of the input, null until it is asked for or set */
+    private TimeSeries series;
+
+    /** the listener on the time series, null while there is no time series */
+    private Listener listener;
+
+    /** the input series of the time series, null if it must be built again */
+    private volatile InputSeries index;
+
+    /** the input this input is a copy of and reads through, null if it has its own time series */
+    private IndexedInput source;
+
+
+    /**
+     * @param key the key of the input
+     */
+    IndexedInput(Comparable key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the key of the input
+     */
+    Comparable getKey() {
+        return key;
+    }
+
+    /**
+     * returns the time series of the input, created empty on first use. creating
+     * it keeps an input series set by {@link #set(InputSeries)}, which is used until
+     * the time series changes
+     * @return the time series of the input
+     */
+    TimeSeries getSeries() {
+        if (source != null) {
+            return source.getSeries();
+        }
+        if (series == null) {
+            series = new TimeSeries(key);
+            listener = new Listener(this, series);
+        }
+        return series;
+    }
+
+    /**
+     * @param series the time series of the input
+     */
+    void setSeries(TimeSeries series) {
+        source = null;
+        if (listener != null) {
+            listener.detach();
+            listener = null;
+        }
+        this.series = series;
+        this.index = null;
+        if (series != null) {
+            listener = new Listener(this, series);
+        }
+    }
+
+    /**
+     * uses an input series instead of the time series, until the time series is
+     * set again or changes, e.g. for a schedule which is not kept as a time series.
+     * on a copy the input series is used until the time series is set
+     * @param input the input series
+     */
+    void set(InputSeries input) {
+        this.index = input;
+    }
+
+    /**
+     * shares the time series and the current input series of another input. if the
+     * other input has a time series, this input reads through it, so that it sees
+     * later changes without listening to the time series itself
+     * @param other the input to copy
+     */
+    void copy(IndexedInput other) {
+        setSeries(null);
+        if (other.series != null || other.source != null) {
+            source = other;
+        } else {
+            index = other.index;
+        }
+    }
+
+    /**
+     * @return the input series of the time series, empty if there is none
+     */
+    InputSeries get() {
+        InputSeries result = index;
+        if (result == null && source != null) {
+            return source.get();
+        }
+        if (result != null) {
+            HITS.increment();
+            return result;
+        }
+        MISSES.increment();
+        result = series == null
+                ? new InputSeries(key, new long[0], new double[0])
+                : InputSeries.of(series);
+        index = result;
+        return result;
+    }
+
+    /**
+     * clears the input series when the time series changes. the listener registers
+     * itself, so that only this class refers to the listener type of the chart library
+     */
+    private static final class Listener implements SeriesChangeListener {
+
+        private final IndexedInput input;
+        private final TimeSeries series;
+
+        Listener(IndexedInput input, TimeSeries series) {
+            this.input = input;
+            this.series = series;
+            series.addChangeListener(this);
+        }
+
+        void detach() {
+            series.removeChangeListener(this);
+        }
+
+        @Override
+        public void seriesChanged(SeriesChangeEvent event) {
+            input.index = null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * -----------------
+ * InfusionController.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * a dosing controller evaluated in a {@link ClosedLoopSimulation}. at every control
+ * time point the controller sees the current state of the model and chooses the
+ * input, e.g. the insulin infusion rate, for the next control interval
+ * @since 1.0
+ */
+public interface InfusionController {
+
+    /**
+     * @param millis the current time in milliseconds since the epoch
+     * @param state the current state variables of the model; must not be changed
+     * @param currentRate the input during the last control interval, 0 at the start
+     * @return the input for the next control interval
+     */
+    double nextRate(long millis, double[] state, double currentRate);
+}
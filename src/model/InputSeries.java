@@ -0,0 +1,182 @@
+/*
+ * -----------------
+ * InputSeries.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+
+/**
+ * an exogenous model input, e.g. an insulin infusion, as a piecewise constant
+ * function of time: each value holds from its time point until the next one.
+ * before the first time point the input is 0.
+ * <p>
+ * the time points and values are kept in primitive arrays, so that the
+ * {@link Solver} can look up the input at each step without allocation; since
+ * the solver moves forward in time it keeps an index into the series and
+ * advances it, which makes the lookups O(1) amortised.
+ * an input series is immutable and may be shared between threads
+ * @since 1.0
+ */
+public final class InputSeries {
+
+    /** the key of the input, used as the key of its output series */
+    private final Comparable key;
+
+    /** the time points in milliseconds since the epoch, strictly increasing */
+    private final long[] times;
+
+    /** the values, parallel to times */
+    private final double[] values;
+
+
+    /**
+     * creates an input series
+     * @param key the key of the input
+     * @param times the time points in milliseconds since the epoch, strictly increasing
+     * @param values the values, parallel to times
+     */
+    public InputSeries(Comparable key, long[] times, double[] values) {
+        if (times.length != values.length) {
+            throw new IllegalArgumentException("The times and values must have the same length.");
+        }
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] <= times[i - 1]) {
+                throw new IllegalArgumentException("The times must be strictly increasing.");
+            }
+        }
+        this.key = key;
+        this.times = times.clone();
+        this.values = values.clone();
+    }
+
+    /**
+     * creates an input series from the items of a time series; each item holds from
+     * the first millisecond of its period. items without a value are skipped
+     * @param series the time series
+     * @return the input series
+     */
+    public static InputSeries of(TimeSeries series) {
+        int n = series.getItemCount();
+        long[] times = new long[n];
+        double[] values = new double[n];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            TimeSeriesDataItem item = series.getDataItem(i);
+            if (item.getValue() != null) {
+                times[size] = item.getPeriod().getFirstMillisecond();
+                values[size] = item.getValue().doubleValue();
+                size++;
+            }
+        }
+        return new InputSeries(series.getKey(), Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * @param key the key of the input
+     * @param value the constant value
+     * @return an input series holding the value at all times
+     */
+    public static InputSeries constant(Comparable key, double value) {
+        return new InputSeries(key, new long[] {Long.MIN_VALUE}, new double[] {value});
+    }
+
+    /**
+     * @return the key of the input
+     */
+    public Comparable getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of time points at which the input changes
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @param index the index of a time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * @param index the index of a time point
+     * @return the value from this time point on
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the value of the input at the time point
+     */
+    public double valueAt(long millis) {
+        return valueOf(indexAt(millis));
+    }
+
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the index of the last time point at or before millis, -1 if there is none
+     */
+    public int indexAt(long millis) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * moves an index forward to the last time point at or before millis
+     * @param index an index returned by indexAt or advance for an earlier time point
+     * @param millis a time point in milliseconds since the epoch, not before the
+     * time point of the index
+     * @return the index of the last time point at or before millis, -1 if there is none
+     */
+    public int advance(int index, long millis) {
+        while (index + 1 < times.length && times[index + 1] <= millis) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @param index an index returned by indexAt or advance
+     * @return the value at the index, 0 for -1
+     */
+    public double valueOf(int index) {
+        return (index < 0) ? 0 : values[index];
+    }
+
+    /**
+     * @param index an index returned by indexAt or advance
+     * @return the time point of the next change after the index, or Long.MAX_VALUE
+     * if the input does not change any more
+     */
+    public long nextChange(int index) {
+        return (index + 1 < times.length) ? times[index + 1] : Long.MAX_VALUE;
+    }
+}
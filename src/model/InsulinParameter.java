@@ -0,0 +1,74 @@
+/*
+ * -----------------
+ * InsulinParameter.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * the parameters of a {@link TwoCompartmentInsulin} model, for code which varies
+ * parameters generically, such as population sampling and sensitivity analysis
+ * @since 1.0
+ */
+public enum InsulinParameter {
+
+    /** the fractional rate constant from plasma to interstitium, 1/s */
+    K1,
+    /** the fractional rate constant from interstitium to plasma, 1/s */
+    K2,
+    /** the fractional clearance rate constant from plasma, 1/s */
+    K3,
+    /** the fractional clearance rate constant from interstitium, 1/s */
+    K4,
+    /** the plasma volume, liters */
+    VP,
+    /** the interstitial volume, liters */
+    VQ,
+    /** the initial plasma concentration, mU/l */
+    CP_INIT,
+    /** the initial interstitial concentration, mU/l */
+    CQ_INIT;
+
+    /**
+     * @param model the model
+     * @return the value of this parameter in the model
+     */
+    public double get(TwoCompartmentInsulin model) {
+        switch (this) {
+            case K1: return model.getK1();
+            case K2: return model.getK2();
+            case K3: return model.getK3();
+            case K4: return model.getK4();
+            case VP: return model.getVp();
+            case VQ: return model.getVq();
+            case CP_INIT: return model.getCp_init();
+            default: return model.getCq_init();
+        }
+    }
+
+    /**
+     * @param model the model
+     * @param value the value to set for this parameter in the model
+     */
+    public void set(TwoCompartmentInsulin model, double value) {
+        switch (this) {
+            case K1: model.setK1(value); break;
+            case K2: model.setK2(value); break;
+            case K3: model.setK3(value); break;
+            case K4: model.setK4(value); break;
+            case VP: model.setVp(value); break;
+            case VQ: model.setVq(value); break;
+            case CP_INIT: model.setCp_init(value); break;
+            default: model.setCq_init(value); break;
+        }
+    }
+}
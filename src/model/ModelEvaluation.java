@@ -10,13 +10,19 @@
  * Changes:
  * --------
  * 5-Feb-2017 : Version 1 (UP);
+ * 19-Oct-2026 : Optional evaluation pyramid;
+ * 19-Oct-2026 : Add the time points of a trajectory;
+ * 19-Oct-2026 : One millisecond period per time point;
  *
  */
 package model;
 
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.Date;
 import java.util.TimeZone;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.Millisecond;
 import org.jfree.data.time.TimeTableXYDataset;
 
 /**
@@ -55,6 +61,11 @@ public class ModelEvaluation extends TimeTableXYDataset {
      * the instant of time at which the evaluation happened
      */
     private Instant instant;
+    
+    /**
+     * the summaries of the results per time bucket, if the model builds them
+     */
+    private EvaluationPyramid pyramid;
 
     /**
      * @return the model; null is not permitted
@@ -83,6 +94,37 @@ public class ModelEvaluation extends TimeTableXYDataset {
     public void setInstant(Instant instant) {
         this.instant = instant;
     }
-    
-    
+
+    /**
+     * @return the summaries of the results per time bucket at several resolutions,
+     * or null if the model was not set to build them
+     * @see CompartmentModel#setPyramidLevels(java.time.Duration...)
+     */
+    public EvaluationPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * @param pyramid the summaries of the results per time bucket
+     */
+    public void setPyramid(EvaluationPyramid pyramid) {
+        this.pyramid = pyramid;
+    }
+
+    /**
+     * adds all time points of a trajectory, with one period of one millisecond per
+     * time point, so that points landed on events or input changes between whole
+     * seconds keep their own period. listeners are notified once at the end
+     * @param trajectory the trajectory
+     * @param zone the time zone of the periods
+     */
+    void addAll(Trajectory trajectory, TimeZone zone) {
+        for (int i = 0; i < trajectory.size(); i++) {
+            RegularTimePeriod t = RegularTimePeriod.createInstance(Millisecond.class, new Date(trajectory.getTime(i)), zone);
+            for (int s = 0; s < trajectory.getSeriesCount(); s++) {
+                add(t, trajectory.getValue(s, i), trajectory.getKey(s), false);
+            }
+        }
+        setNotify(true);
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * -----------------
+ * MonteCarloResult.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import org.jfree.data.xy.YIntervalDataItem;
+import org.jfree.data.xy.YIntervalSeries;
+import org.jfree.data.xy.YIntervalSeriesCollection;
+
+/**
+ * the lower, middle and upper percentiles of an output series of a
+ * {@link MonteCarloSimulation} per time point
+ * @since 1.0
+ */
+public class MonteCarloResult {
+
+    /** the key of the output series */
+    private final Comparable key;
+
+    /** the time points in milliseconds since the epoch */
+    private final long[] times;
+
+    /** the estimates of the percentiles */
+    private final StreamingQuantiles quantiles;
+
+
+    MonteCarloResult(Comparable key, long[] times, StreamingQuantiles quantiles) {
+        this.key = key;
+        this.times = times;
+        this.quantiles = quantiles;
+    }
+
+
+    /**
+     * @return the number of time points
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the lower percentile at the time point
+     */
+    public double getLower(int index) {
+        return quantiles.getQuantile(index, 0);
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the middle percentile at the time point
+     */
+    public double getMiddle(int index) {
+        return quantiles.getQuantile(index, 1);
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the upper percentile at the time point
+     */
+    public double getUpper(int index) {
+        return quantiles.getQuantile(index, 2);
+    }
+
+    /**
+     * @return the number of realizations
+     */
+    public long getRealizations() {
+        return (times.length == 0) ? 0 : quantiles.getCount(0);
+    }
+
+    /**
+     * creates a dataset for a deviation chart: the middle percentile as the y value
+     * and the lower and upper percentiles as the interval, with the time points in
+     * milliseconds as x values
+     * @return the dataset
+     */
+    public YIntervalSeriesCollection toDataset() {
+        YIntervalSeries series = new YIntervalSeries(key);
+        for (int i = 0; i < times.length; i++) {
+            series.add(new YIntervalDataItem(times[i], getMiddle(i), getLower(i), getUpper(i)), false);
+        }
+        YIntervalSeriesCollection dataset = new YIntervalSeriesCollection();
+        dataset.addSeries(series);
+        return dataset;
+    }
+
+    /**
+     * @return the key of the output series
+     */
+    public Comparable getKey() {
+        return key;
+    }
+}
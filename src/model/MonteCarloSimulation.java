@@ -0,0 +1,194 @@
+/*
+ * -----------------
+ * MonteCarloSimulation.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * evaluates a {@link TwoCompartmentInsulin} model for a population of virtual
+ * patients whose parameters are drawn from distributions, and estimates the lower,
+ * median and upper percentiles of one output series per time point.
+ * <p>
+ * the trajectories are not stored: the realizations are evaluated in parallel in
+ * batches, and after each batch the values of the output series are added to
+ * {@link StreamingQuantiles}, so that the memory needed is independent of the
+ * number of realizations. every realization draws its parameters from its own
+ * random generator seeded from the seed and its index, and values are added in the
+ * order of the realizations, so results are the same for any number of threads.
+ * <p>
+ * the realizations must share their time points, so the model must not have
+ * state triggers
+ * @since 1.0
+ */
+public class MonteCarloSimulation {
+
+    /** the number of realizations evaluated per batch and thread */
+    private static final int BATCH_PER_THREAD = 32;
+
+    /** the template model */
+    private final TwoCompartmentInsulin template;
+
+    /** the distributions of the varied parameters */
+    private final Map<InsulinParameter, ParameterDistribution> distributions = new EnumMap<>(InsulinParameter.class);
+
+    /** the probabilities of the lower, middle and upper percentile */
+    private double[] probabilities = {0.05, 0.5, 0.95};
+
+    /** the seed of the random generators */
+    private long seed = 1;
+
+    /** the number of threads */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+
+    /**
+     * @param template the template model, whose parameters are used where no
+     * distribution is given
+     */
+    public MonteCarloSimulation(TwoCompartmentInsulin template) {
+        if (!template.getTriggers().isEmpty()) {
+            throw new IllegalArgumentException("Models with state triggers are not supported.");
+        }
+        this.template = template;
+    }
+
+
+    /**
+     * draws a parameter from a distribution for every realization
+     * @param parameter the parameter
+     * @param distribution the distribution of the parameter
+     */
+    public void setDistribution(InsulinParameter parameter, ParameterDistribution distribution) {
+        distributions.put(parameter, distribution);
+    }
+
+    /**
+     * draws the value of each parameter for one realization into the model
+     * @param realization the index of the realization
+     * @param model the model to set the parameters of
+     */
+    public void sample(int realization, TwoCompartmentInsulin model) {
+        SplittableRandom random = randomFor(seed, realization);
+        for (Map.Entry<InsulinParameter, ParameterDistribution> entry : distributions.entrySet()) {
+            entry.getKey().set(model, entry.getValue().sample(random));
+        }
+    }
+
+    /**
+     * runs the simulation
+     * @param realizations the number of realizations
+     * @param output the key of the output series, e.g. the plasma insulin concentration
+     * @return the percentiles of the output series per time point
+     */
+    public MonteCarloResult run(int realizations, Comparable output) {
+
+        Trajectory reference = template.solve();
+        final int series = reference.indexOf(output);
+        if (series < 0) {
+            throw new IllegalArgumentException("The model has no output " + output);
+        }
+        final int points = reference.size();
+        long[] times = Arrays.copyOf(reference.getTimes(), points);
+
+        StreamingQuantiles quantiles = new StreamingQuantiles(points, probabilities);
+        int batch = BATCH_PER_THREAD * threads;
+        final double[] buffer = new double[batch * points];
+
+        try (BatchEvaluator evaluator = new BatchEvaluator(template, threads)) {
+            for (int first = 0; first < realizations; first += batch) {
+                final int base = first;
+                final int members = Math.min(realizations, first + batch) - first;
+
+                evaluator.evaluate(first, first + members, this::sample, (member, trajectory) -> {
+                    if (trajectory.size() != points) {
+                        throw new IllegalStateException("Realization " + member + " has different time points.");
+                    }
+                    System.arraycopy(trajectory.getValues(series), 0, buffer, (member - base) * points, points);
+                });
+
+                // add the batch in realization order, with the time points split over the threads
+                evaluator.split(points, (slot, from, to) -> {
+                    for (int m = 0; m < members; m++) {
+                        int offset = m * points;
+                        for (int t = from; t < to; t++) {
+                            quantiles.add(t, buffer[offset + t]);
+                        }
+                    }
+                });
+            }
+        }
+
+        return new MonteCarloResult(output, times, quantiles);
+    }
+
+    /**
+     * @param seed the seed of the simulation
+     * @param realization the index of a realization
+     * @return the random generator of the realization
+     */
+    public static SplittableRandom randomFor(long seed, long realization) {
+        // the finaliser of SplitMix64 decorrelates neighbouring indices
+        long z = seed + (realization + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /**
+     * @param low the probability of the lower percentile, e.g. 0.05
+     * @param middle the probability of the middle percentile, e.g. 0.5
+     * @param high the probability of the upper percentile, e.g. 0.95
+     */
+    public void setPercentiles(double low, double middle, double high) {
+        if (!(low < middle && middle < high)) {
+            throw new IllegalArgumentException("The percentiles must be increasing.");
+        }
+        this.probabilities = new double[] {low, middle, high};
+    }
+
+    /**
+     * @return the seed of the random generators
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed the seed of the random generators
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive.");
+        }
+        this.threads = threads;
+    }
+}
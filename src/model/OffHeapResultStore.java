@@ -0,0 +1,438 @@
+/*
+ * -----------------
+ * OffHeapResultStore.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Close waits for the reads and writes in progress;
+ *
+ */
+package model;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * stores the output series of the members of a population evaluation outside the
+ * Java heap, e.g. for cohorts whose trajectories take many gigabytes, so that they
+ * do not add to the work of the garbage collector.
+ * <p>
+ * all members share the time points, as the evaluations of a {@link BatchEvaluator}
+ * do. the values are kept as doubles in direct buffers, or in buffers mapped from a
+ * file for stores larger than the memory, split into segments of whole members of
+ * at most 1 GiB. each member can be written by a different thread. the memory is
+ * released by {@link #close()}, which waits for the reads and writes in progress;
+ * afterwards they throw an {@link IllegalStateException}, rather than touching the
+ * released memory
+ * @since 1.0
+ */
+public class OffHeapResultStore implements AutoCloseable {
+
+    /** the maximum size of a segment in bytes */
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    /** the keys of the output series */
+    private final Comparable[] keys;
+
+    /** the time points in milliseconds since the epoch */
+    private final long[] times;
+
+    /** the number of members */
+    private final int members;
+
+    /** the number of doubles per member */
+    private final int memberSize;
+
+    /** the number of members per segment */
+    private final int membersPerSegment;
+
+    /** the segments */
+    private final ByteBuffer[] segments;
+
+    /** the file of a mapped store, or null */
+    private final FileChannel channel;
+
+    /** reads and writes share the read lock, closing takes the write lock */
+    private final ReadWriteLock access = new ReentrantReadWriteLock();
+
+    private volatile boolean closed;
+
+
+    /**
+     * creates a store in direct memory, which is limited by the option
+     * -XX:MaxDirectMemorySize of the JVM, by default to the maximum heap size
+     * @param keys the keys of the output series
+     * @param times the time points shared by all members, in milliseconds since the epoch
+     * @param members the number of members
+     */
+    public OffHeapResultStore(Comparable[] keys, long[] times, int members) {
+        this(keys, times, members, null);
+    }
+
+    private OffHeapResultStore(Comparable[] keys, long[] times, int members, FileChannel channel) {
+        if (members < 0) {
+            throw new IllegalArgumentException("The number of members must not be negative.");
+        }
+        long size = (long) keys.length * times.length;
+        if (size * Double.BYTES > SEGMENT_BYTES) {
+            throw new IllegalArgumentException("A member must take at most " + SEGMENT_BYTES + " bytes.");
+        }
+        this.keys = keys.clone();
+        this.times = times.clone();
+        this.members = members;
+        this.memberSize = (int) size;
+        this.membersPerSegment = (int) Math.max(1, SEGMENT_BYTES / Math.max(1, size * Double.BYTES));
+        this.segments = new ByteBuffer[(members + membersPerSegment - 1) / membersPerSegment];
+        this.channel = channel;
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                int count = Math.min(membersPerSegment, members - i * membersPerSegment);
+                long bytes = (long) count * memberSize * Double.BYTES;
+                if (channel == null) {
+                    segments[i] = ByteBuffer.allocateDirect((int) bytes);
+                } else {
+                    long offset = (long) i * membersPerSegment * memberSize * Double.BYTES;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+                }
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Cannot map the store.", e);
+        } catch (RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * creates a store in a file mapped into memory, so that the operating system
+     * pages it to disk as needed; the file is created or truncated
+     * @param file the file
+     * @param keys the keys of the output series
+     * @param times the time points shared by all members, in milliseconds since the epoch
+     * @param members the number of members
+     * @return the store
+     * @throws IOException if the file cannot be created
+     */
+    public static OffHeapResultStore mapped(Path file, Comparable[] keys, long[] times, int members) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new OffHeapResultStore(keys, times, members, channel);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * stores the output series of a member; can be used as the
+     * {@link BatchEvaluator.MemberSink} of a population evaluation
+     * @param member the index of the member
+     * @param trajectory the output of the member, with the time points of the store
+     */
+    public void put(int member, Trajectory trajectory) {
+        if (trajectory.size() != times.length || trajectory.getSeriesCount() != keys.length) {
+            throw new IllegalArgumentException("The trajectory of member " + member + " does not match the store.");
+        }
+        Lock lock = access.readLock();
+        lock.lock();
+        try {
+            ByteBuffer segment = segmentOf(member);
+            int base = offsetOf(member);
+            for (int s = 0; s < keys.length; s++) {
+                double[] values = trajectory.getValues(s);
+                int offset = base + s * times.length * Double.BYTES;
+                for (int i = 0; i < times.length; i++) {
+                    segment.putDouble(offset + i * Double.BYTES, values[i]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * stores one value
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param point the index of the time point
+     * @param value the value
+     */
+    public void setValue(int member, int series, int point, double value) {
+        Lock lock = access.readLock();
+        lock.lock();
+        try {
+            segmentOf(member).putDouble(offsetOf(member, series, point), value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param point the index of the time point
+     * @return the value
+     */
+    public double getValue(int member, int series, int point) {
+        Lock lock = access.readLock();
+        lock.lock();
+        try {
+            return segmentOf(member).getDouble(offsetOf(member, series, point));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * copies the values of a series of a member
+     * @param member the index of the member
+     * @param series the index of the series
+     * @param out the array to copy to, with room for all time points
+     * @return the array
+     */
+    public double[] getValues(int member, int series, double[] out) {
+        Lock lock = access.readLock();
+        lock.lock();
+        try {
+            ByteBuffer segment = segmentOf(member);
+            int offset = offsetOf(member, series, 0);
+            for (int i = 0; i < times.length; i++) {
+                out[i] = segment.getDouble(offset + i * Double.BYTES);
+            }
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the segment of a member; called with the read lock held
+     */
+    private ByteBuffer segmentOf(int member) {
+        if (closed) {
+            throw new IllegalStateException("The store is closed.");
+        }
+        if (member < 0 || member >= members) {
+            throw new IndexOutOfBoundsException("Member " + member + " of " + members);
+        }
+        return segments[member / membersPerSegment];
+    }
+
+    private int offsetOf(int member) {
+        return (member % membersPerSegment) * memberSize * Double.BYTES;
+    }
+
+    private int offsetOf(int member, int series, int point) {
+        if (series < 0 || series >= keys.length || point < 0 || point >= times.length) {
+            throw new IndexOutOfBoundsException("Series " + series + ", time point " + point);
+        }
+        return offsetOf(member) + (series * times.length + point) * Double.BYTES;
+    }
+
+    /**
+     * creates a dataset reading the series of one member from the store, e.g. as the
+     * dataset of a chart; after the store is closed the values cannot be read
+     * @param member the index of the member
+     * @return the dataset, with the time points in milliseconds as x values
+     */
+    public XYDataset toDataset(final int member) {
+        Lock lock = access.readLock();
+        lock.lock();
+        try {
+            segmentOf(member);
+        } finally {
+            lock.unlock();
+        }
+        return new AbstractXYDataset() {
+            @Override
+            public int getSeriesCount() {
+                return keys.length;
+            }
+
+            @Override
+            public Comparable getSeriesKey(int series) {
+                return keys[series];
+            }
+
+            @Override
+            public int getItemCount(int series) {
+                return times.length;
+            }
+
+            @Override
+            public Number getX(int series, int item) {
+                return times[item];
+            }
+
+            @Override
+            public double getXValue(int series, int item) {
+                return times[item];
+            }
+
+            @Override
+            public Number getY(int series, int item) {
+                return getValue(member, series, item);
+            }
+
+            @Override
+            public double getYValue(int series, int item) {
+                return getValue(member, series, item);
+            }
+
+            @Override
+            public DomainOrder getDomainOrder() {
+                return DomainOrder.ASCENDING;
+            }
+        };
+    }
+
+    /**
+     * writes the store as comma separated values, one line per member and time point
+     * with the member, the time and the value of each series
+     * @param out where to write to
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("member,time");
+        for (Comparable key : keys) {
+            out.append(',').append(String.valueOf(key));
+        }
+        out.append('\n');
+        for (int m = 0; m < members; m++) {
+            for (int i = 0; i < times.length; i++) {
+                out.append(Integer.toString(m)).append(',').append(Instant.ofEpochMilli(times[i]).toString());
+                for (int s = 0; s < keys.length; s++) {
+                    out.append(',').append(Double.toString(getValue(m, s, i)));
+                }
+                out.append('\n');
+            }
+        }
+    }
+
+    /**
+     * @return the number of members
+     */
+    public int getMemberCount() {
+        return members;
+    }
+
+    /**
+     * @return the number of output series
+     */
+    public int getSeriesCount() {
+        return keys.length;
+    }
+
+    /**
+     * @param series the index of the series
+     * @return the key of the series
+     */
+    public Comparable getKey(int series) {
+        return keys[series];
+    }
+
+    /**
+     * @return the number of time points
+     */
+    public int getPointCount() {
+        return times.length;
+    }
+
+    /**
+     * @param point the index of the time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int point) {
+        return times[point];
+    }
+
+    /**
+     * @return the size of the stored values in bytes
+     */
+    public long getByteSize() {
+        return (long) members * memberSize * Double.BYTES;
+    }
+
+    /**
+     * releases the memory of the store, and writes a mapped store to its file;
+     * waits for the reads and writes in progress
+     */
+    @Override
+    public void close() {
+        Lock lock = access.writeLock();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] != null) {
+                    free(segments[i]);
+                    segments[i] = null;
+                }
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot close the store.", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * releases the memory of a direct or mapped buffer now rather than when it is
+     * collected; uses Unsafe.invokeCleaner on Java 9 and later, and the cleaner of
+     * the buffer on Java 8. if neither is accessible the memory is released by the
+     * garbage collector
+     */
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not Java 9 or later
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
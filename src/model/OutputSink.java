@@ -0,0 +1,75 @@
+/*
+ * -----------------
+ * OutputSink.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * receives the output of a {@link Solver} run: the time points in increasing order
+ * with the values of the state variables followed by the inputs of the model.
+ * implemented by {@link Trajectory}, which keeps every time point, and by
+ * {@link EvaluationPyramid}, which keeps summaries per time bucket
+ * @since 1.0
+ */
+public interface OutputSink {
+
+    /**
+     * starts a run
+     * @param keys the keys of the output series
+     * @param capacity the expected number of time points
+     */
+    void reset(Comparable[] keys, int capacity);
+
+    /**
+     * appends a time point
+     * @param millis the time point in milliseconds since the epoch
+     * @param state the values of the state variables
+     * @param inputs the values of the inputs
+     */
+    void add(long millis, double[] state, double[] inputs);
+
+    /**
+     * replaces the values of the last time point, e.g. after an instantaneous
+     * change of the state at that time point
+     * @param state the values of the state variables
+     * @param inputs the values of the inputs
+     */
+    void replaceLast(double[] state, double[] inputs);
+
+    /**
+     * @param first the first sink
+     * @param second the second sink
+     * @return a sink passing the output to both sinks
+     */
+    static OutputSink both(OutputSink first, OutputSink second) {
+        return new OutputSink() {
+            @Override
+            public void reset(Comparable[] keys, int capacity) {
+                first.reset(keys, capacity);
+                second.reset(keys, capacity);
+            }
+
+            @Override
+            public void add(long millis, double[] state, double[] inputs) {
+                first.add(millis, state, inputs);
+                second.add(millis, state, inputs);
+            }
+
+            @Override
+            public void replaceLast(double[] state, double[] inputs) {
+                first.replaceLast(state, inputs);
+                second.replaceLast(state, inputs);
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * -----------------
+ * ParameterDistribution.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.util.SplittableRandom;
+
+/**
+ * the distribution of a model parameter over a population of virtual patients
+ * @since 1.0
+ */
+public interface ParameterDistribution {
+
+    /**
+     * @param random the source of randomness
+     * @return a value drawn from the distribution
+     */
+    double sample(SplittableRandom random);
+
+    /**
+     * @param median the median of the parameter
+     * @param sigma the standard deviation of the logarithm of the parameter;
+     * about the coefficient of variation for small values
+     * @return a log-normal distribution
+     */
+    static ParameterDistribution logNormal(double median, double sigma) {
+        if (median <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("The median must be positive and sigma not negative.");
+        }
+        final double mu = Math.log(median);
+        return random -> Math.exp(mu + sigma * gaussian(random));
+    }
+
+    /**
+     * @param low the lower bound
+     * @param high the upper bound
+     * @return a uniform distribution over [low, high)
+     */
+    static ParameterDistribution uniform(double low, double high) {
+        return random -> low + (high - low) * random.nextDouble();
+    }
+
+    /**
+     * @param value the value
+     * @return a distribution always giving the value
+     */
+    static ParameterDistribution fixed(double value) {
+        return random -> value;
+    }
+
+    /**
+     * draws a standard normal value with the polar method
+     * @param random the source of randomness
+     * @return the value
+     */
+    static double gaussian(SplittableRandom random) {
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        return v1 * Math.sqrt(-2 * Math.log(s) / s);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * -----------------
+ * ScheduledEvent.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * an event at a fixed time point. the {@link Solver} ends a step exactly at the
+ * time point and applies the action there, so the effect of the event does not
+ * depend on the time step
+ * @since 1.0
+ */
+public final class ScheduledEvent implements Comparable<ScheduledEvent> {
+
+    /** the time of the event in milliseconds since the epoch */
+    private final long time;
+
+    /** the change of the state */
+    private final EventAction action;
+
+    /**
+     * @param time the time of the event in milliseconds since the epoch
+     * @param action the change of the state
+     */
+    public ScheduledEvent(long time, EventAction action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Null 'action' argument.");
+        }
+        this.time = time;
+        this.action = action;
+    }
+
+    /**
+     * @return the time of the event in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the change of the state
+     */
+    public EventAction getAction() {
+        return action;
+    }
+
+    @Override
+    public int compareTo(ScheduledEvent other) {
+        return Long.compare(time, other.time);
+    }
+}
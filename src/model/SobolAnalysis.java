@@ -0,0 +1,246 @@
+/*
+ * -----------------
+ * SobolAnalysis.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Indices of 0 where the output does not vary;
+ *
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * estimates the first and total order Sobol indices of parameters of a
+ * {@link TwoCompartmentInsulin} model for one output series per time point.
+ * <p>
+ * the design follows Saltelli: two matrices A and B of n parameter sets each are
+ * taken from a Sobol sequence of twice the number of parameters, and for each
+ * parameter i the matrix AB<sub>i</sub> is A with column i from B, which gives
+ * n (k + 2) evaluations for k parameters. the first order indices are estimated
+ * as by Saltelli (2010) and the total order indices as by Jansen (1999).
+ * <p>
+ * the evaluations run in batches on a {@link BatchEvaluator}; the sums of each
+ * batch are added per time point in the order of the design, so results do not
+ * depend on the number of threads. the model must not have state triggers, as
+ * all evaluations must share their time points
+ * @since 1.0
+ */
+public class SobolAnalysis {
+
+    /** the number of rows of the design evaluated per batch and thread */
+    private static final int ROWS_PER_THREAD = 16;
+
+    /**
+     * the range of a varied parameter
+     */
+    private static class Range {
+
+        private final InsulinParameter parameter;
+        private final double low;
+        private final double high;
+        private final boolean logarithmic;
+
+        private Range(InsulinParameter parameter, double low, double high, boolean logarithmic) {
+            this.parameter = parameter;
+            this.low = logarithmic ? Math.log(low) : low;
+            this.high = logarithmic ? Math.log(high) : high;
+            this.logarithmic = logarithmic;
+        }
+
+        /**
+         * @param u a value in [0, 1)
+         * @return the value of the parameter at u
+         */
+        private double valueAt(double u) {
+            double value = low + (high - low) * u;
+            return logarithmic ? Math.exp(value) : value;
+        }
+    }
+
+    /** the template model */
+    private final TwoCompartmentInsulin template;
+
+    /** the ranges of the varied parameters */
+    private final List<Range> ranges = new ArrayList<>();
+
+    /** the number of threads */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+
+    /**
+     * @param template the template model, whose parameters are used for those not varied
+     */
+    public SobolAnalysis(TwoCompartmentInsulin template) {
+        if (!template.getTriggers().isEmpty()) {
+            throw new IllegalArgumentException("Models with state triggers are not supported.");
+        }
+        this.template = template;
+    }
+
+
+    /**
+     * varies a parameter uniformly over a range
+     * @param parameter the parameter
+     * @param low the lower bound
+     * @param high the upper bound
+     */
+    public void addParameter(InsulinParameter parameter, double low, double high) {
+        addRange(new Range(parameter, low, high, false));
+    }
+
+    /**
+     * varies a parameter uniformly over a range on a logarithmic scale, e.g. for
+     * rate constants known up to a factor
+     * @param parameter the parameter
+     * @param low the lower bound, positive
+     * @param high the upper bound
+     */
+    public void addLogParameter(InsulinParameter parameter, double low, double high) {
+        if (low <= 0) {
+            throw new IllegalArgumentException("The lower bound must be positive.");
+        }
+        addRange(new Range(parameter, low, high, true));
+    }
+
+    private void addRange(Range range) {
+        if (!(range.low < range.high)) {
+            throw new IllegalArgumentException("The lower bound must be less than the upper bound.");
+        }
+        if (2 * (ranges.size() + 1) > SobolSequence.MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("At most " + SobolSequence.MAX_DIMENSIONS / 2 + " parameters can be varied.");
+        }
+        for (Range other : ranges) {
+            if (other.parameter == range.parameter) {
+                throw new IllegalArgumentException("The parameter " + range.parameter + " is already varied.");
+            }
+        }
+        ranges.add(range);
+    }
+
+    /**
+     * runs the analysis
+     * @param samples the number of rows n of the design; powers of two balance the Sobol sequence best
+     * @param output the key of the output series, e.g. the plasma insulin concentration
+     * @return the indices per parameter and time point
+     */
+    public SobolResult run(int samples, Comparable output) {
+
+        final int k = ranges.size();
+        if (k == 0) {
+            throw new IllegalStateException("No parameters are varied.");
+        }
+        if (samples < 2) {
+            throw new IllegalArgumentException("At least two samples are needed.");
+        }
+
+        Trajectory reference = template.solve();
+        final int series = reference.indexOf(output);
+        if (series < 0) {
+            throw new IllegalArgumentException("The model has no output " + output);
+        }
+        final int points = reference.size();
+        long[] times = Arrays.copyOf(reference.getTimes(), points);
+
+        // the outputs are shifted by the reference so the sums of squares do not cancel
+        final double[] shift = Arrays.copyOf(reference.getValues(series), points);
+
+        final double[] sum = new double[points];
+        final double[] sumOfSquares = new double[points];
+        final double[][] first = new double[k][points];
+        final double[][] total = new double[k][points];
+
+        final int block = k + 2;
+        int rows = ROWS_PER_THREAD * threads;
+        final double[][] design = new double[rows][2 * k];
+        final double[] buffer = new double[rows * block * points];
+        SobolSequence sequence = new SobolSequence(2 * k);
+
+        try (BatchEvaluator evaluator = new BatchEvaluator(template, threads)) {
+            for (int done = 0; done < samples; done += rows) {
+                final int count = Math.min(rows, samples - done);
+                for (int r = 0; r < count; r++) {
+                    sequence.next(design[r]);
+                }
+
+                // row r gives the members A, B, AB_1 .. AB_k at r * (k + 2)
+                evaluator.evaluate(0, count * block, (member, model) -> {
+                    double[] row = design[member / block];
+                    int kind = member % block;
+                    for (int i = 0; i < k; i++) {
+                        boolean fromB = (kind == 1) || (kind == 2 + i);
+                        Range range = ranges.get(i);
+                        range.parameter.set(model, range.valueAt(row[fromB ? k + i : i]));
+                    }
+                }, (member, trajectory) -> {
+                    if (trajectory.size() != points) {
+                        throw new IllegalStateException("Member " + member + " has different time points.");
+                    }
+                    System.arraycopy(trajectory.getValues(series), 0, buffer, member * points, points);
+                });
+
+                evaluator.split(points, (slot, from, to) -> {
+                    for (int r = 0; r < count; r++) {
+                        int a = r * block * points;
+                        int b = a + points;
+                        for (int t = from; t < to; t++) {
+                            double fa = buffer[a + t] - shift[t];
+                            double fb = buffer[b + t] - shift[t];
+                            sum[t] += fa + fb;
+                            sumOfSquares[t] += fa * fa + fb * fb;
+                            for (int i = 0; i < k; i++) {
+                                double fab = buffer[b + (i + 1) * points + t] - shift[t];
+                                first[i][t] += fb * (fab - fa);
+                                total[i][t] += (fa - fab) * (fa - fab);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        InsulinParameter[] parameters = new InsulinParameter[k];
+        for (int i = 0; i < k; i++) {
+            parameters[i] = ranges.get(i).parameter;
+        }
+        double[] mean = new double[points];
+        double[] variance = new double[points];
+        for (int t = 0; t < points; t++) {
+            double m = sum[t] / (2.0 * samples);
+            mean[t] = shift[t] + m;
+            variance[t] = Math.max(0, sumOfSquares[t] / (2.0 * samples) - m * m);
+            // an output which does not vary has no variance to attribute to a parameter
+            for (int i = 0; i < k; i++) {
+                first[i][t] = (variance[t] == 0) ? 0 : first[i][t] / samples / variance[t];
+                total[i][t] = (variance[t] == 0) ? 0 : total[i][t] / (2.0 * samples) / variance[t];
+            }
+        }
+        return new SobolResult(output, parameters, samples, times, mean, variance, first, total);
+    }
+
+    /**
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive.");
+        }
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * -----------------
+ * SobolResult.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Indices of 0 where the output does not vary;
+ *
+ */
+package model;
+
+import java.io.IOException;
+import java.time.Instant;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * the first and total order Sobol indices of the parameters of a
+ * {@link SobolAnalysis} per time point of an output series.
+ * <p>
+ * where the output does not vary, e.g. at the start for a fixed initial state,
+ * the variance is 0 and so are all indices, as no parameter has an effect
+ * @since 1.0
+ */
+public class SobolResult {
+
+    /** the key of the output series */
+    private final Comparable key;
+
+    /** the varied parameters */
+    private final InsulinParameter[] parameters;
+
+    /** the number of rows of the design */
+    private final int samples;
+
+    /** the time points in milliseconds since the epoch */
+    private final long[] times;
+
+    /** the mean and variance of the output per time point */
+    private final double[] mean;
+    private final double[] variance;
+
+    /** the indices per parameter and time point */
+    private final double[][] first;
+    private final double[][] total;
+
+
+    SobolResult(Comparable key, InsulinParameter[] parameters, int samples, long[] times,
+            double[] mean, double[] variance, double[][] first, double[][] total) {
+        this.key = key;
+        this.parameters = parameters;
+        this.samples = samples;
+        this.times = times;
+        this.mean = mean;
+        this.variance = variance;
+        this.first = first;
+        this.total = total;
+    }
+
+
+    /**
+     * @return the number of time points
+     */
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * @param parameter the index of the parameter
+     * @param index the index of the time point
+     * @return the share of the variance due to the parameter alone
+     */
+    public double getFirstOrder(int parameter, int index) {
+        return first[parameter][index];
+    }
+
+    /**
+     * @param parameter the index of the parameter
+     * @param index the index of the time point
+     * @return the share of the variance due to the parameter and its interactions
+     */
+    public double getTotalOrder(int parameter, int index) {
+        return total[parameter][index];
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the mean of the output
+     */
+    public double getMean(int index) {
+        return mean[index];
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the variance of the output
+     */
+    public double getVariance(int index) {
+        return variance[index];
+    }
+
+    /**
+     * @return the varied parameters, in the order of the indices
+     */
+    public InsulinParameter[] getParameters() {
+        return parameters.clone();
+    }
+
+    /**
+     * @return the number of rows of the design
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of model evaluations
+     */
+    public long getEvaluations() {
+        return (long) samples * (parameters.length + 2);
+    }
+
+    /**
+     * creates a dataset with one series per parameter and the time points in
+     * milliseconds as x values
+     * @param totalOrder whether to give the total order instead of the first order indices
+     * @return the dataset
+     */
+    public XYSeriesCollection toDataset(boolean totalOrder) {
+        double[][] indices = totalOrder ? total : first;
+        XYSeriesCollection dataset = new XYSeriesCollection();
+        for (int i = 0; i < parameters.length; i++) {
+            XYSeries series = new XYSeries(parameters[i], false, false);
+            for (int t = 0; t < times.length; t++) {
+                series.add(times[t], indices[i][t], false);
+            }
+            dataset.addSeries(series);
+        }
+        return dataset;
+    }
+
+    /**
+     * writes the indices as comma separated values, one line per time point
+     * @param out where to write to
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("time,mean,variance");
+        for (InsulinParameter parameter : parameters) {
+            out.append(",S_").append(parameter.name()).append(",ST_").append(parameter.name());
+        }
+        out.append('\n');
+        for (int t = 0; t < times.length; t++) {
+            out.append(Instant.ofEpochMilli(times[t]).toString())
+                    .append(',').append(Double.toString(mean[t]))
+                    .append(',').append(Double.toString(variance[t]));
+            for (int i = 0; i < parameters.length; i++) {
+                out.append(',').append(Double.toString(first[i][t]))
+                        .append(',').append(Double.toString(total[i][t]));
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * @return the key of the output series
+     */
+    public Comparable getKey() {
+        return key;
+    }
+}
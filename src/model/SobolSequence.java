@@ -0,0 +1,145 @@
+/*
+ * -----------------
+ * SobolSequence.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * a Sobol low-discrepancy sequence of points in the unit hypercube, with the
+ * direction numbers of Joe and Kuo for up to 16 dimensions.
+ * <p>
+ * the points are generated in Gray code order, so the next point costs one
+ * exclusive or per dimension; the first point, the origin, is skipped
+ * @since 1.0
+ */
+public class SobolSequence {
+
+    /** the maximum number of dimensions */
+    public static final int MAX_DIMENSIONS = 16;
+
+    /** the number of bits of a coordinate */
+    private static final int BITS = 32;
+
+    /** the degree s, the coefficients a and the initial numbers m of the primitive polynomials of dimensions 2 to 16 */
+    private static final int[][] POLYNOMIALS = {
+        {1, 0, 1},
+        {2, 1, 1, 3},
+        {3, 1, 1, 3, 1},
+        {3, 2, 1, 1, 1},
+        {4, 1, 1, 1, 3, 3},
+        {4, 4, 1, 3, 5, 13},
+        {5, 2, 1, 1, 5, 5, 17},
+        {5, 4, 1, 1, 5, 5, 5},
+        {5, 7, 1, 1, 7, 11, 19},
+        {5, 11, 1, 1, 5, 1, 1},
+        {5, 13, 1, 1, 1, 3, 11},
+        {5, 14, 1, 3, 5, 5, 31},
+        {6, 1, 1, 3, 3, 9, 7, 49},
+        {6, 13, 1, 1, 1, 15, 21, 21},
+        {6, 16, 1, 3, 1, 13, 27, 49}
+    };
+
+    /** the scale from a coordinate to the unit interval */
+    private static final double SCALE = 1.0 / (1L << BITS);
+
+    /** the direction numbers per dimension and bit */
+    private final int[][] directions;
+
+    /** the current coordinates */
+    private final int[] x;
+
+    /** the index of the current point */
+    private long index;
+
+
+    /**
+     * @param dimensions the number of dimensions, at most {@link #MAX_DIMENSIONS}
+     */
+    public SobolSequence(int dimensions) {
+        if (dimensions < 1 || dimensions > MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("The number of dimensions must be between 1 and " + MAX_DIMENSIONS + ".");
+        }
+        this.directions = new int[dimensions][BITS];
+        this.x = new int[dimensions];
+
+        for (int j = 0; j < BITS; j++) {
+            directions[0][j] = 1 << (BITS - 1 - j);
+        }
+        for (int d = 1; d < dimensions; d++) {
+            int[] polynomial = POLYNOMIALS[d - 1];
+            int s = polynomial[0];
+            int a = polynomial[1];
+            int[] v = directions[d];
+            for (int j = 0; j < s; j++) {
+                v[j] = polynomial[2 + j] << (BITS - 1 - j);
+            }
+            for (int j = s; j < BITS; j++) {
+                v[j] = v[j - s] ^ (v[j - s] >>> s);
+                for (int k = 1; k < s; k++) {
+                    if (((a >>> (s - 1 - k)) & 1) != 0) {
+                        v[j] ^= v[j - k];
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * moves to the next point
+     * @param point receives the coordinates of the point, in [0, 1)
+     */
+    public void next(double[] point) {
+        index++;
+        int bit = Long.numberOfTrailingZeros(index);
+        for (int d = 0; d < x.length; d++) {
+            x[d] ^= directions[d][bit];
+            point[d] = (x[d] & 0xFFFFFFFFL) * SCALE;
+        }
+    }
+
+    /**
+     * moves to a point, so that the next point is the one after it
+     * @param index the index of the point; 0 is the origin
+     */
+    public void skipTo(long index) {
+        if (index < 0 || index >= (1L << BITS)) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+        long gray = index ^ (index >>> 1);
+        for (int d = 0; d < x.length; d++) {
+            int value = 0;
+            for (int bit = 0; bit < BITS; bit++) {
+                if (((gray >>> bit) & 1) != 0) {
+                    value ^= directions[d][bit];
+                }
+            }
+            x[d] = value;
+        }
+        this.index = index;
+    }
+
+    /**
+     * @return the index of the current point
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number of dimensions
+     */
+    public int getDimensions() {
+        return x.length;
+    }
+}
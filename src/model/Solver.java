@@ -0,0 +1,429 @@
+/*
+ * -----------------
+ * Solver.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Land steps on events and input changes, state triggers;
+ * 19-Oct-2026 : Input overrides for closed loop simulation;
+ * 19-Oct-2026 : Output at requested time points or intervals;
+ * 19-Oct-2026 : Output to any OutputSink;
+ * 19-Oct-2026 : Read the time period in milliseconds;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * integrates the equations of a {@link CompartmentModel} with explicit Euler steps
+ * of delta t seconds, from the start to the end of the time period of the model.
+ * <p>
+ * steps are shortened to end exactly at the time points where an input changes and
+ * where a {@link ScheduledEvent} of the model is due, so that infusion changes and
+ * boluses take effect at their exact time whatever the step size. the crossings of
+ * {@link StateTrigger}s are located within a step to the millisecond, and the step
+ * is ended there. the state after the actions of events is recorded at the time
+ * point of the event.
+ * <p>
+ * a solver keeps its working arrays between runs and looks up the model inputs
+ * through indexed {@link InputSeries}, so that a run does not allocate apart from
+ * growing the output {@link Trajectory}. the output goes to an {@link OutputSink}, so
+ * other summaries can be built in the same pass. the state can also be advanced step by
+ * step with {@link #reset(CompartmentModel)} and {@link #advanceTo(long, OutputSink)}.
+ * a solver is not thread safe; use one solver per thread
+ * @since 1.0
+ */
+public class Solver {
+
+    /** the model being solved */
+    private CompartmentModel model;
+
+    /** the state variables, their derivatives and the current inputs */
+    private double[] y = new double[0];
+    private double[] dydt = new double[0];
+    private double[] u = new double[0];
+
+    /** the state before the current step, and a scratch state for locating triggers */
+    private double[] yPrevious = new double[0];
+    private double[] yTrial = new double[0];
+
+    /** the scheduled events of the model, sorted, and the index of the next one due */
+    private List<ScheduledEvent> events = Collections.emptyList();
+    private int nextEvent;
+
+    /** the state triggers of the model and the values of their functions */
+    private List<StateTrigger> triggers = Collections.emptyList();
+    private double[] g = new double[0];
+
+    /** the inputs of the model and the index of each into its series */
+    private InputSeries[] inputs = new InputSeries[0];
+    private int[] inputIndex = new int[0];
+
+    /** the inputs set by the caller instead of their series, and their values */
+    private boolean[] overridden = new boolean[0];
+    private double[] overrides = new double[0];
+
+    /** the start of the run and the current time in milliseconds since the epoch */
+    private long start;
+    private long time;
+
+    /** the step in milliseconds */
+    private long step;
+
+    /** the number of steps taken since the last reset */
+    private long steps;
+
+
+    /**
+     * solves the model over its time period
+     * @param model the model to solve
+     * @param out the sink receiving the output, e.g. a trajectory; it is reset first
+     * @return the sink
+     */
+    public <T extends OutputSink> T solve(CompartmentModel model, T out) {
+        reset(model);
+        long end = model.getEndMillis();
+        out.reset(outputKeys(), (int) Math.min(Integer.MAX_VALUE - 8, (end - start) / step + 2));
+        out.add(time, y, u);
+        advanceTo(end, out);
+        return out;
+    }
+
+    /**
+     * solves the model over its time period, recording only the state at the given
+     * time points; the solver steps by delta t in between, with the steps shortened
+     * to end at the time points. the state at the time of an event is recorded after
+     * the event, as for a full run
+     * @param model the model to solve
+     * @param times the time points in milliseconds since the epoch, strictly increasing
+     * and within the time period of the model
+     * @param out the sink receiving the output, e.g. a trajectory; it is reset first
+     * @return the sink
+     */
+    public <T extends OutputSink> T solve(CompartmentModel model, long[] times, T out) {
+        long first = model.getStartMillis();
+        long end = model.getEndMillis();
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] < first || times[i] > end) {
+                throw new IllegalArgumentException("The time points must be within the time period.");
+            }
+            if (i > 0 && times[i] <= times[i - 1]) {
+                throw new IllegalArgumentException("The time points must be strictly increasing.");
+            }
+        }
+        reset(model);
+        out.reset(outputKeys(), times.length);
+        for (long t : times) {
+            advanceTo(t, null);
+            out.add(time, y, u);
+        }
+        return out;
+    }
+
+    /**
+     * solves the model over its time period, recording the state at the start and
+     * then every interval, and at the end; if the interval is a multiple of delta t
+     * the recorded states are those of a full run
+     * @param model the model to solve
+     * @param interval the interval between the recorded time points in milliseconds
+     * @param out the sink receiving the output, e.g. a trajectory; it is reset first
+     * @return the sink
+     */
+    public <T extends OutputSink> T solveEvery(CompartmentModel model, long interval, T out) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+        reset(model);
+        long end = model.getEndMillis();
+        out.reset(outputKeys(), (int) Math.min(Integer.MAX_VALUE - 8, (end - start) / interval + 2));
+        out.add(time, y, u);
+        while (time < end) {
+            advanceTo(Math.min(end, time + interval), null);
+            out.add(time, y, u);
+        }
+        return out;
+    }
+
+    /**
+     * prepares a run of the model: sets the state to the initial state of the model
+     * and the time to the start of its time period
+     * @param model the model to solve
+     */
+    public void reset(CompartmentModel model) {
+
+        this.model = model;
+        this.step = model.getDeltat() * 1000L;
+        if (step <= 0) {
+            throw new IllegalStateException("The time step must be positive.");
+        }
+
+        int n = model.getStateCount();
+        if (y.length != n) {
+            y = new double[n];
+            dydt = new double[n];
+            yPrevious = new double[n];
+            yTrial = new double[n];
+        }
+        model.initialState(y);
+
+        inputs = model.getInputs();
+        if (u.length != inputs.length) {
+            u = new double[inputs.length];
+            inputIndex = new int[inputs.length];
+            overridden = new boolean[inputs.length];
+            overrides = new double[inputs.length];
+        }
+        Arrays.fill(overridden, false);
+
+        start = model.getStartMillis();
+        time = start;
+        steps = 0;
+        updateInputs();
+
+        // events before the start are ignored, events at the start apply to the initial state
+        events = model.getEvents();
+        nextEvent = 0;
+        while (nextEvent < events.size() && events.get(nextEvent).getTime() < start) {
+            nextEvent++;
+        }
+        applyDueEvents();
+
+        triggers = model.getTriggers();
+        if (g.length != triggers.size()) {
+            g = new double[triggers.size()];
+        }
+        updateTriggers();
+    }
+
+    /**
+     * advances the state to the given time, recording every step; the events due
+     * at that time are applied
+     * @param end the time in milliseconds since the epoch to advance to
+     * @param out the sink receiving the output, or null
+     */
+    public void advanceTo(long end, OutputSink out) {
+        while (time < end) {
+
+            long next = Math.min(time + step, end);
+            if (nextEvent < events.size()) {
+                next = Math.min(next, events.get(nextEvent).getTime());
+            }
+            for (int i = 0; i < inputs.length; i++) {
+                if (!overridden[i]) {
+                    next = Math.min(next, inputs[i].nextChange(inputIndex[i]));
+                }
+            }
+
+            StateTrigger fired = step(next);
+            updateInputs();
+            if (out != null) {
+                out.add(time, y, u);
+            }
+
+            boolean changed = applyDueEvents();
+            if (fired != null) {
+                fired.getAction().apply(time, y);
+                changed = true;
+            }
+            if (changed && out != null) {
+                out.replaceLast(y, u);
+            }
+            updateTriggers();
+        }
+    }
+
+    /**
+     * takes one Euler step from the current time towards the given time. if a
+     * trigger fires during the step, the step ends at the earliest crossing
+     * @return the trigger which ended the step, or null
+     */
+    private StateTrigger step(long next) {
+
+        long from = time;
+        double h = (next - from) / 1000.0;
+        model.derivatives((from - start) / 1000.0, y, u, dydt);
+        System.arraycopy(y, 0, yPrevious, 0, y.length);
+        for (int i = 0; i < y.length; i++) {
+            y[i] += h * dydt[i];
+        }
+        time = next;
+        steps++;
+
+        StateTrigger fired = null;
+        long earliest = next;
+        for (int k = 0; k < g.length; k++) {
+            StateTrigger trigger = triggers.get(k);
+            if (trigger.crosses(g[k], trigger.g(y))) {
+                long crossing = locate(trigger, g[k], from, next);
+                if (fired == null || crossing < earliest) {
+                    fired = trigger;
+                    earliest = crossing;
+                }
+            }
+        }
+        if (fired != null && earliest < next) {
+            // the Euler step is linear in time, so the state at the crossing lies on it
+            double s = (double) (earliest - from) / (next - from);
+            for (int i = 0; i < y.length; i++) {
+                y[i] = yPrevious[i] + s * (y[i] - yPrevious[i]);
+            }
+            time = earliest;
+        }
+        return fired;
+    }
+
+    /**
+     * locates the crossing of a trigger within the current step with the Illinois
+     * variant of the false position method
+     * @return the first millisecond at or after the crossing, after from
+     */
+    private long locate(StateTrigger trigger, double gFrom, long from, long to) {
+
+        double a = 0;
+        double b = 1;
+        double ga = gFrom;
+        double gb = trigger.g(y);
+        int side = 0;
+        double span = to - from;
+
+        for (int iteration = 0; iteration < 60 && (b - a) * span > 0.5; iteration++) {
+            double c = (ga == gb) ? (a + b) / 2 : b - gb * (b - a) / (gb - ga);
+            if (!(c > a && c < b)) {
+                c = (a + b) / 2;
+            }
+            for (int i = 0; i < y.length; i++) {
+                yTrial[i] = yPrevious[i] + c * (y[i] - yPrevious[i]);
+            }
+            double gc = trigger.g(yTrial);
+            if (trigger.crosses(ga, gc)) {
+                b = c;
+                gb = gc;
+                if (side == -1) {
+                    ga /= 2;
+                }
+                side = -1;
+            } else {
+                a = c;
+                ga = gc;
+                if (side == 1) {
+                    gb /= 2;
+                }
+                side = 1;
+            }
+        }
+        return Math.max(from + 1, Math.min(to, from + (long) Math.ceil(b * span)));
+    }
+
+    /**
+     * applies the scheduled events which are due at the current time
+     * @return true if an event was applied
+     */
+    private boolean applyDueEvents() {
+        boolean applied = false;
+        while (nextEvent < events.size() && events.get(nextEvent).getTime() <= time) {
+            events.get(nextEvent).getAction().apply(time, y);
+            nextEvent++;
+            applied = true;
+        }
+        return applied;
+    }
+
+    /**
+     * evaluates the trigger functions for the current state
+     */
+    private void updateTriggers() {
+        for (int k = 0; k < g.length; k++) {
+            g[k] = triggers.get(k).g(y);
+        }
+    }
+
+    /**
+     * @return the keys of the state variables followed by the keys of the inputs
+     */
+    private Comparable[] outputKeys() {
+        Comparable[] states = model.getStateKeys();
+        Comparable[] keys = new Comparable[states.length + inputs.length];
+        System.arraycopy(states, 0, keys, 0, states.length);
+        for (int i = 0; i < inputs.length; i++) {
+            keys[states.length + i] = inputs[i].getKey();
+        }
+        return keys;
+    }
+
+    /**
+     * looks up the inputs at the current time
+     */
+    private void updateInputs() {
+        for (int i = 0; i < inputs.length; i++) {
+            int index = (steps == 0) ? inputs[i].indexAt(time) : inputs[i].advance(inputIndex[i], time);
+            inputIndex[i] = index;
+            u[i] = overridden[i] ? overrides[i] : inputs[i].valueOf(index);
+        }
+    }
+
+    /**
+     * sets an input to a constant value from the current time on, instead of the
+     * value of its series, e.g. the infusion rate chosen by a controller.
+     * overrides are cleared by {@link #reset(CompartmentModel)}
+     * @param input the index of the input
+     * @param value the value of the input
+     */
+    public void setInputOverride(int input, double value) {
+        overridden[input] = true;
+        overrides[input] = value;
+        u[input] = value;
+    }
+
+    /**
+     * lets an input follow its series again from the current time on
+     * @param input the index of the input
+     */
+    public void clearInputOverride(int input) {
+        overridden[input] = false;
+        updateInputs();
+    }
+
+    /**
+     * @return the current state; the array is updated in place by further steps
+     */
+    public double[] getState() {
+        return y;
+    }
+
+    /**
+     * @return the current inputs; the array is updated in place by further steps
+     */
+    public double[] getInputs() {
+        return u;
+    }
+
+    /**
+     * @return the current time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the number of steps taken since the last reset
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the model being solved
+     */
+    public CompartmentModel getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * -----------------
+ * StateTrigger.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+/**
+ * an event triggered by the state of a model, when a function of the state
+ * crosses zero, e.g. when the plasma concentration drops below a threshold.
+ * the {@link Solver} locates the crossing within a step to the millisecond,
+ * ends the step there and applies the action
+ * @since 1.0
+ */
+public abstract class StateTrigger {
+
+    /**
+     * the direction of the crossing which triggers the event
+     */
+    public enum Direction {
+        /** the function goes from positive to zero or negative */
+        FALLING,
+        /** the function goes from negative to zero or positive */
+        RISING,
+        /** the function changes its sign either way */
+        BOTH
+    }
+
+    /** the direction of the crossing */
+    private final Direction direction;
+
+    /** the change of the state */
+    private final EventAction action;
+
+    /**
+     * @param direction the direction of the crossing which triggers the event
+     * @param action the change of the state
+     */
+    protected StateTrigger(Direction direction, EventAction action) {
+        if (direction == null || action == null) {
+            throw new IllegalArgumentException("Null 'direction' or 'action' argument.");
+        }
+        this.direction = direction;
+        this.action = action;
+    }
+
+    /**
+     * @param y the state variables of the model
+     * @return the value of the function whose crossing of zero triggers the event
+     */
+    public abstract double g(double[] y);
+
+    /**
+     * @param before the value of the function before a step
+     * @param after the value of the function after the step
+     * @return true if the step crosses zero in the direction of this trigger
+     */
+    public boolean crosses(double before, double after) {
+        switch (direction) {
+            case FALLING:
+                return before > 0 && after <= 0;
+            case RISING:
+                return before < 0 && after >= 0;
+            default:
+                return (before > 0 && after <= 0) || (before < 0 && after >= 0);
+        }
+    }
+
+    /**
+     * @return the direction of the crossing
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the change of the state
+     */
+    public EventAction getAction() {
+        return action;
+    }
+
+    /**
+     * @param state the index of a state variable
+     * @param threshold the threshold
+     * @param action the change of the state when the variable drops below the threshold
+     * @return a trigger for the state variable dropping below the threshold
+     */
+    public static StateTrigger below(final int state, final double threshold, EventAction action) {
+        return new StateTrigger(Direction.FALLING, action) {
+            @Override
+            public double g(double[] y) {
+                return y[state] - threshold;
+            }
+        };
+    }
+
+    /**
+     * @param state the index of a state variable
+     * @param threshold the threshold
+     * @param action the change of the state when the variable rises above the threshold
+     * @return a trigger for the state variable rising above the threshold
+     */
+    public static StateTrigger above(final int state, final double threshold, EventAction action) {
+        return new StateTrigger(Direction.RISING, action) {
+            @Override
+            public double g(double[] y) {
+                return y[state] - threshold;
+            }
+        };
+    }
+}
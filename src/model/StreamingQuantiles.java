@@ -0,0 +1,204 @@
+/*
+ * -----------------
+ * StreamingQuantiles.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+
+/**
+ * estimates quantiles of a stream of values per time point in constant memory,
+ * with the P-square algorithm of Jain and Chlamtac (1985): each quantile of each
+ * time point is tracked by five markers whose heights are adjusted with a
+ * piecewise parabolic formula as values arrive. the estimates are exact for up to
+ * five values.
+ * <p>
+ * the markers of all time points are kept in flat primitive arrays. the estimator
+ * is not thread safe, but disjoint ranges of time points may be updated by
+ * different threads
+ * @since 1.0
+ */
+public class StreamingQuantiles {
+
+    private static final int MARKERS = 5;
+
+    /** the probabilities of the quantiles */
+    private final double[] probabilities;
+
+    /** the number of time points */
+    private final int points;
+
+    /** the marker heights, positions and desired positions per time point and quantile */
+    private final double[] heights;
+    private final double[] positions;
+    private final double[] desired;
+
+    /** the number of values per time point */
+    private final long[] counts;
+
+
+    /**
+     * @param points the number of time points
+     * @param probabilities the probabilities of the quantiles, between 0 and 1
+     */
+    public StreamingQuantiles(int points, double... probabilities) {
+        for (double p : probabilities) {
+            if (!(p > 0 && p < 1)) {
+                throw new IllegalArgumentException("The probabilities must be between 0 and 1.");
+            }
+        }
+        this.points = points;
+        this.probabilities = probabilities.clone();
+        int size = points * probabilities.length * MARKERS;
+        this.heights = new double[size];
+        this.positions = new double[size];
+        this.desired = new double[size];
+        this.counts = new long[points];
+    }
+
+
+    /**
+     * adds a value at a time point
+     * @param point the index of the time point
+     * @param x the value
+     */
+    public void add(int point, double x) {
+        long n = ++counts[point];
+        for (int q = 0; q < probabilities.length; q++) {
+            int base = (point * probabilities.length + q) * MARKERS;
+            if (n <= MARKERS) {
+                insertSorted(base, (int) n - 1, x);
+                if (n == MARKERS) {
+                    initialise(base, probabilities[q]);
+                }
+            } else {
+                update(base, probabilities[q], x);
+            }
+        }
+    }
+
+    /**
+     * @param point the index of the time point
+     * @param quantile the index of the quantile, in the order of the probabilities
+     * @return the estimate of the quantile at the time point, NaN if there are no values
+     */
+    public double getQuantile(int point, int quantile) {
+        long n = counts[point];
+        int base = (point * probabilities.length + quantile) * MARKERS;
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (n < MARKERS) {
+            // exact quantile of the sorted values, nearest rank
+            int rank = (int) Math.ceil(probabilities[quantile] * n) - 1;
+            return heights[base + Math.max(0, rank)];
+        }
+        return heights[base + 2];
+    }
+
+    /**
+     * @param point the index of the time point
+     * @return the number of values at the time point
+     */
+    public long getCount(int point) {
+        return counts[point];
+    }
+
+    /**
+     * @return the number of time points
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the probabilities of the quantiles
+     */
+    public double[] getProbabilities() {
+        return probabilities.clone();
+    }
+
+    private void insertSorted(int base, int size, double x) {
+        int i = size;
+        while (i > 0 && heights[base + i - 1] > x) {
+            heights[base + i] = heights[base + i - 1];
+            i--;
+        }
+        heights[base + i] = x;
+    }
+
+    private void initialise(int base, double p) {
+        for (int i = 0; i < MARKERS; i++) {
+            positions[base + i] = i;
+        }
+        desired[base] = 0;
+        desired[base + 1] = 2 * p;
+        desired[base + 2] = 4 * p;
+        desired[base + 3] = 2 + 2 * p;
+        desired[base + 4] = 4;
+    }
+
+    private void update(int base, double p, double x) {
+
+        double[] q = heights;
+        double[] n = positions;
+
+        // find the cell of x, extending the extreme markers if necessary
+        int k;
+        if (x < q[base]) {
+            q[base] = x;
+            k = 0;
+        } else if (x >= q[base + 4]) {
+            q[base + 4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (k < 3 && x >= q[base + k + 1]) {
+                k++;
+            }
+        }
+
+        for (int i = k + 1; i < MARKERS; i++) {
+            n[base + i]++;
+        }
+        desired[base + 1] += p / 2;
+        desired[base + 2] += p;
+        desired[base + 3] += (1 + p) / 2;
+        desired[base + 4] += 1;
+
+        // adjust the heights of the middle markers
+        for (int i = 1; i <= 3; i++) {
+            int m = base + i;
+            double d = desired[m] - n[m];
+            if ((d >= 1 && n[m + 1] - n[m] > 1) || (d <= -1 && n[m - 1] - n[m] < -1)) {
+                int s = (d >= 0) ? 1 : -1;
+                double parabolic = q[m] + s / (n[m + 1] - n[m - 1])
+                        * ((n[m] - n[m - 1] + s) * (q[m + 1] - q[m]) / (n[m + 1] - n[m])
+                        + (n[m + 1] - n[m] - s) * (q[m] - q[m - 1]) / (n[m] - n[m - 1]));
+                if (q[m - 1] < parabolic && parabolic < q[m + 1]) {
+                    q[m] = parabolic;
+                } else {
+                    q[m] = q[m] + s * (q[m + s] - q[m]) / (n[m + s] - n[m]);
+                }
+                n[m] += s;
+            }
+        }
+    }
+
+    /**
+     * removes all values
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * -----------------
+ * TimePeriods.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package model;
+
+import org.jfree.data.time.SimpleTimePeriod;
+import org.jfree.data.time.TimePeriod;
+
+/**
+ * creates the time periods of the chart library for the models. kept apart from
+ * {@link CompartmentModel} so that loading a model does not load the chart library
+ * @since 1.0
+ */
+final class TimePeriods {
+
+    private TimePeriods() {
+    }
+
+    /**
+     * @param start the start in milliseconds since the epoch
+     * @param end the end in milliseconds since the epoch
+     * @return the time period
+     */
+    static TimePeriod of(long start, long end) {
+        return new SimpleTimePeriod(start, end);
+    }
+}
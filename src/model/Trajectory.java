@@ -0,0 +1,194 @@
+/*
+ * -----------------
+ * Trajectory.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Implements OutputSink;
+ * 19-Oct-2026 : Leave adding to a model evaluation to the evaluation;
+ *
+ */
+package model;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * the output of a {@link Solver} run in primitive arrays: a list of time points and,
+ * per output series, one value per time point. the output series are the state
+ * variables of the model followed by its inputs.
+ * <p>
+ * a trajectory can be reset and reused for further runs, so that repeated
+ * evaluations do not allocate once the arrays are large enough
+ * @since 1.0
+ */
+public class Trajectory implements OutputSink {
+
+    /** the keys of the output series */
+    private Comparable[] keys = new Comparable[0];
+
+    /** the time points in milliseconds since the epoch */
+    private long[] times = new long[0];
+
+    /** the values per series and time point */
+    private double[][] values = new double[0][];
+
+    /** the number of time points */
+    private int size;
+
+
+    /**
+     * removes all time points and sets the output series, keeping the allocated arrays
+     * where possible
+     * @param keys the keys of the output series
+     * @param capacity the expected number of time points
+     */
+    @Override
+    public void reset(Comparable[] keys, int capacity) {
+        this.keys = keys;
+        this.size = 0;
+        if (values.length != keys.length) {
+            double[][] resized = new double[keys.length][];
+            for (int s = 0; s < keys.length; s++) {
+                resized[s] = (s < values.length) ? values[s] : new double[0];
+            }
+            values = resized;
+        }
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * appends a time point
+     * @param millis the time point in milliseconds since the epoch
+     * @param state the values of the state variables
+     * @param inputs the values of the inputs
+     */
+    @Override
+    public void add(long millis, double[] state, double[] inputs) {
+        if (size == times.length) {
+            ensureCapacity(Math.max(16, size + (size >> 1)));
+        }
+        times[size] = millis;
+        int s = 0;
+        for (int i = 0; i < state.length; i++) {
+            values[s++][size] = state[i];
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            values[s++][size] = inputs[i];
+        }
+        size++;
+    }
+
+    /**
+     * replaces the values of the last time point, e.g. after an instantaneous
+     * change of the state at that time point
+     * @param state the values of the state variables
+     * @param inputs the values of the inputs
+     */
+    @Override
+    public void replaceLast(double[] state, double[] inputs) {
+        int s = 0;
+        for (int i = 0; i < state.length; i++) {
+            values[s++][size - 1] = state[i];
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            values[s++][size - 1] = inputs[i];
+        }
+    }
+
+    /**
+     * @return the number of time points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of output series
+     */
+    public int getSeriesCount() {
+        return keys.length;
+    }
+
+    /**
+     * @param series the index of the output series
+     * @return the key of the output series
+     */
+    public Comparable getKey(int series) {
+        return keys[series];
+    }
+
+    /**
+     * @param key the key of an output series
+     * @return the index of the output series, or -1 if there is none with this key
+     */
+    public int indexOf(Comparable key) {
+        for (int s = 0; s < keys.length; s++) {
+            if (keys[s].equals(key)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index the index of the time point
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * @param series the index of the output series
+     * @param index the index of the time point
+     * @return the value
+     */
+    public double getValue(int series, int index) {
+        return values[series][index];
+    }
+
+    /**
+     * returns the array holding the values of an output series; only the first
+     * size() elements are valid, and the array is reused when the trajectory is reset
+     * @param series the index of the output series
+     * @return the values of the output series
+     */
+    public double[] getValues(int series) {
+        return values[series];
+    }
+
+    /**
+     * @return the array holding the time points; only the first size() elements are valid
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * adds all time points to a model evaluation, with one period of one millisecond
+     * per time point. listeners of the evaluation are notified once at the end
+     * @param results the model evaluation
+     * @param zone the time zone of the periods
+     */
+    public void addTo(ModelEvaluation results, TimeZone zone) {
+        results.addAll(this, zone);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            times = Arrays.copyOf(times, capacity);
+        }
+        for (int s = 0; s < values.length; s++) {
+            if (capacity > values[s].length) {
+                values[s] = Arrays.copyOf(values[s], Math.max(capacity, times.length));
+            }
+        }
+    }
+}
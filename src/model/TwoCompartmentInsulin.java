@@ -10,6 +10,15 @@
  * Changes:
  * --------
  * 31-Jan-2017 : Version 1 (UP);
+ * 19-Oct-2026 : Evaluate with the shared Solver; the infusion enters the plasma
+ *               as rxi/60 mU per second (it was scaled by delta t twice);
+ * 19-Oct-2026 : Bolus injections;
+ * 19-Oct-2026 : Copy constructor and generic parameter access;
+ * 19-Oct-2026 : Infusion schedule without a time series;
+ * 19-Oct-2026 : Create the infusion time series on first use;
+ * 19-Oct-2026 : Keep the infusion schedule when the time series is created;
+ * 19-Oct-2026 : Reset to a copy of another model;
+ * 19-Oct-2026 : Default model of the demonstration application;
  *
  */
 
@@ -17,9 +26,6 @@ package model;
 
 import java.time.Instant;
 import org.jfree.data.time.TimeSeries;
-import java.util.Date;
-import org.jfree.data.time.RegularTimePeriod;
-import org.jfree.data.time.Second;
 
 /**
  *
@@ -59,9 +65,9 @@ public class TwoCompartmentInsulin extends CompartmentModel {
     Comparable key_rxi = "Cont.iv infusion";
     
     /**
-     * the exogenous insulin infusion as time series 
+     * the exogenous insulin infusion in mU/min as time series, indexed for the solver
      */
-    private TimeSeries rxi = new TimeSeries(key_rxi);
+    private final IndexedInput rxi = new IndexedInput(key_rxi);
     
     
     
@@ -69,81 +75,122 @@ public class TwoCompartmentInsulin extends CompartmentModel {
         super();
     }
     
+    /**
+     * creates a copy of a model with the same parameters, infusion and events, e.g. for
+     * evaluating many parameter sets in parallel. the infusion time series and
+     * schedule are shared
+     * @param other the model to copy
+     */
+    public TwoCompartmentInsulin(TwoCompartmentInsulin other) {
+        super(other);
+        copyValues(other);
+    }
     
+    /**
+     * creates a model with the parameters of the demonstration application, e.g. as
+     * the default of the command line, the service and cohort jobs
+     * @return the model
+     */
+    public static TwoCompartmentInsulin defaultModel() {
+        TwoCompartmentInsulin model = new TwoCompartmentInsulin();
+        model.setVp(4.1);
+        model.setVq(11.79);
+        model.setK2(0.03 / 60);
+        model.setK3(0.07 / 60);
+        model.setK4(0.01 / 60);
+        model.setK1(model.getK2() * model.getVq() / model.getVp());
+        return model;
+    }
     
     /**
-     * calculates the next plasma insulin concentration over the given time step,
-     * for a given plasma concentration and interstitial concentration and insulin
-     * infusion
-     * @param cp current concentration in plasma (mU/l)
-     * @param cq current concentration in interst. (mU/l)
-     * @param rxit current infusion in mU*deltat/60s
-     * @return next plasma concentration
+     * makes this model a copy of another model, as the copy constructor does, e.g. to
+     * reuse one model for many evaluations
+     * @param other the model to copy
      */
-    private double calculate_cp(double cp, double cq, double rxit)
-    {
-        double dc = (rxit - ((k1+k3)*cp*getVp()) + (getK2()*cq*getVq()) ) * getDeltat(); 
-        return ( cp*getVp() +dc )/getVp(); 
+    void reset(TwoCompartmentInsulin other) {
+        copyFrom(other);
+        copyValues(other);
+    }
+    
+    private void copyValues(TwoCompartmentInsulin other) {
+        for (InsulinParameter parameter : InsulinParameter.values()) {
+            parameter.set(this, parameter.get(other));
+        }
+        rxi.copy(other.rxi);
     }
     
+    
+    
+    @Override
+    protected Comparable[] getStateKeys() {
+        return new Comparable[] {key_cp, key_cq};
+    }
+
+    @Override
+    protected void initialState(double[] y) {
+        y[0] = getCp_init();
+        y[1] = getCq_init();
+    }
+
+    @Override
+    protected InputSeries[] getInputs() {
+        return new InputSeries[] {rxi.get()};
+    }
+
     /**
-     * calculates the next interstitial insulin concentration over the given time step,
-     * for a given plasma concentration and interstitial concentration
-     * @param cp current concentration in plasma (mU/l)
-     * @param cq current concentration in interst. (mU/l)
-     * @return next interstitial concentration
+     * calculates the change per second of the plasma and interstitial insulin concentrations,
+     * for a given plasma concentration and interstitial concentration and insulin infusion
+     * @param t the time in seconds since the start
+     * @param y the concentrations in plasma and interstitium (mU/l)
+     * @param u the insulin infusion (mU/min)
+     * @param dydt the changes of the concentrations (mU/l/s)
      */
-    private double calculate_cq(double cp, double cq)
-    {
-        double dq = (getK1()*cp*getVp() - ( (getK2()+getK4())*cq*getVq() ) ) * getDeltat();  
-        return (cq*getVq() +dq)/getVq();
+    @Override
+    protected void derivatives(double t, double[] y, double[] u, double[] dydt) {
+        double cp = y[0];
+        double cq = y[1];
+        dydt[0] = (u[0] / 60 - (k1 + k3) * cp * vp + k2 * cq * vq) / vp;
+        dydt[1] = (k1 * cp * vp - (k2 + k4) * cq * vq) / vq;
     }
 
+
+    /**
+     * adds an intravenous bolus injection, which raises the plasma concentration
+     * by amount/vp at the given time
+     * @param instant the time of the injection
+     * @param amount the amount of insulin in mU
+     */
+    public void addBolus(Instant instant, double amount) {
+        addEvent(instant, new Bolus(this, amount));
+    }
     
-    
+    /**
+     * binds boluses to the copy, so that they use the plasma volume of the copy
+     */
     @Override
-    protected void evaluateModel(ModelEvaluation results) {
-        
-        double cp = getCp_init();
-        double cq = getCq_init();
-        
-        /** create time period for start point */
-        Date start = getTimeperiod().getStart();
-        
-        /** create a second - this is the start time point */
-        RegularTimePeriod t = RegularTimePeriod.createInstance(Second.class, start, getZone());
-        
-        /** if there is no insulin infusion at this start time point - set rxi = 0 */
-        double rxi_t = (rxi.getValue(t) == null)? 0 : rxi.getValue(t).doubleValue()* deltat/60;
-        
-        /** add initial values to the results */
-        results.add(t, cp, key_cp);        
-        results.add(t, cq, key_cq);
-        results.add(t, rxi_t, key_rxi);
-        
-        Instant instant = start.toInstant();
-        Instant end = getTimeperiod().getEnd().toInstant();
-        
+    protected EventAction copyAction(EventAction action) {
+        if (action instanceof Bolus) {
+            return new Bolus(this, ((Bolus) action).amount);
+        }
+        return action;
+    }
+    
+    /**
+     * a bolus raising the plasma concentration of a model by amount/vp
+     */
+    private static final class Bolus implements EventAction {
         
+        private final TwoCompartmentInsulin model;
+        private final double amount;
         
-        while (instant.isBefore(end))  {
-            
-            instant = instant.plusSeconds(getDeltat());  //increase t by delta t
-            
-            t = RegularTimePeriod.createInstance(Second.class, Date.from(instant), getZone());
-            
-            /** if there is no insulin infusion at this start time point - set rxi to previous value */
-            rxi_t = (rxi.getValue(t) == null)? rxi_t : rxi.getValue(t).doubleValue() * deltat/60;
-            
-            double next_cp = calculate_cp(cp, cq, rxi_t); //evaluate plasma
-            double next_cq = calculate_cq(cp, cq);        //evaluate interstitium
+        Bolus(TwoCompartmentInsulin model, double amount) {
+            this.model = model;
+            this.amount = amount;
+        }
         
-            results.add(t, next_cp, key_cp);        
-            results.add(t, next_cq, key_cq);
-            results.add(t, rxi_t, key_rxi);
-            
-            cp = next_cp;
-            cq = next_cq;
+        @Override
+        public void apply(long millis, double[] y) {
+            y[0] += amount / model.getVp();
         }
     }
 
@@ -263,17 +310,46 @@ public class TwoCompartmentInsulin extends CompartmentModel {
    
 
     /**
+     * returns the infusion time series, created empty on first use; a schedule set
+     * by {@link #setRxiSchedule(InputSeries)} is not in the time series, but stays
+     * in use until the time series changes
      * @return the rxi
      */
     public TimeSeries getRxi() {
-        return rxi;
+        return rxi.getSeries();
     }
 
     /**
      * @param rxi the rxi to set
      */
     public void setRxi(TimeSeries rxi) {
-        this.rxi = rxi;
+        this.rxi.setSeries(rxi);
+    }
+
+    /**
+     * sets the insulin infusion in mU/min without a time series, e.g. for
+     * evaluations which do not need a dataset; the schedule is used until
+     * the infusion time series is set again or changes
+     * @param schedule the infusion
+     */
+    public void setRxiSchedule(InputSeries schedule) {
+        this.rxi.set(schedule);
+    }
+
+    /**
+     * returns the insulin infusion in mU/min as used by the solver, without
+     * creating the infusion time series
+     * @return the infusion
+     */
+    public InputSeries getRxiSchedule() {
+        return rxi.get();
+    }
+
+    /**
+     * @return the key of the infusion, the key of its output series
+     */
+    public Comparable getRxiKey() {
+        return rxi.getKey();
     }
 
 }
@@ -0,0 +1,521 @@
+
+package patient;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * aggregates the body mass index of all patients of a registry in the background,
+ * e.g. for a dashboard of a ward. for each patient the latest BMI and its change over
+ * a period are kept, and over all patients the percentiles of the latest BMI.
+ * <p>
+ * the aggregator listens to the registry and only reads the patients which changed,
+ * on its own thread, shortly after the change, so that bursts of measurements are
+ * aggregated in one pass. each pass publishes an immutable {@link Snapshot} to the
+ * snapshot listeners, on the thread of the aggregator; views show a page of the
+ * snapshot, so they never hold more than the visible patients.
+ * <p>
+ * measurements must be added through {@link PatientRegistry#update} to be seen.
+ * a patient which cannot be aggregated, or a snapshot listener which fails, is
+ * logged and does not stop the pass. the patient is logged once and read again
+ * after a delay which doubles with each failure, at most {@link #MAX_ATTEMPTS}
+ * times, and then only when it changes again
+ * @since 1.0
+ */
+public class BmiAggregator implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(BmiAggregator.class.getName());
+
+    /** the number of times a patient which cannot be aggregated is read before it is left until it changes */
+    public static final int MAX_ATTEMPTS = 8;
+
+    /** the shortest delay before a failed patient is read again, in milliseconds */
+    private static final long MIN_RETRY_MILLIS = 100;
+
+    /** orders the rows by patient id */
+    @SuppressWarnings("unchecked")
+    public static final Comparator<Row> BY_ID = (a, b) -> a.id.compareTo(b.id);
+
+    /** orders the rows by latest BMI, highest first, patients without BMI last */
+    public static final Comparator<Row> BY_LATEST = (a, b) -> {
+        if (Double.isNaN(a.latest) || Double.isNaN(b.latest)) {
+            return Boolean.compare(Double.isNaN(a.latest), Double.isNaN(b.latest));
+        }
+        return Double.compare(b.latest, a.latest);
+    };
+
+    /**
+     * the aggregated BMI of one patient
+     */
+    public static final class Row {
+
+        private final Comparable id;
+        private final double latest;
+        private final long latestTime;
+        private final double delta;
+        private final int count;
+
+        Row(Comparable id, double latest, long latestTime, double delta, int count) {
+            this.id = id;
+            this.latest = latest;
+            this.latestTime = latestTime;
+            this.delta = delta;
+            this.count = count;
+        }
+
+        /**
+         * @return the patient id
+         */
+        public Comparable getId() {
+            return id;
+        }
+
+        /**
+         * @return the latest BMI in kg/m^2, NaN if the patient has no BMI value
+         */
+        public double getLatest() {
+            return latest;
+        }
+
+        /**
+         * @return the time of the latest BMI in milliseconds since the epoch
+         */
+        public long getLatestTime() {
+            return latestTime;
+        }
+
+        /**
+         * @return the change of the BMI over the period, from the last value at or
+         * before the start of the period; NaN if there is none
+         */
+        public double getDelta() {
+            return delta;
+        }
+
+        /**
+         * @return the number of BMI values
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * the aggregates of all patients after one pass
+     */
+    public static final class Snapshot {
+
+        private final Row[] rows;
+        private final double[] levels;
+        private final double[] percentiles;
+        private final int withBmi;
+        private final long version;
+
+        Snapshot(Row[] rows, double[] levels, double[] percentiles, int withBmi, long version) {
+            this.rows = rows;
+            this.levels = levels;
+            this.percentiles = percentiles;
+            this.withBmi = withBmi;
+            this.version = version;
+        }
+
+        /**
+         * @return the number of patients
+         */
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        /**
+         * @param index the index of a row, in the order of the aggregator
+         * @return the row
+         */
+        public Row getRow(int index) {
+            return rows[index];
+        }
+
+        /**
+         * @param from the index of the first row
+         * @param count the largest number of rows
+         * @return the rows of the page
+         */
+        public List<Row> getPage(int from, int count) {
+            int start = Math.max(0, Math.min(from, rows.length));
+            int end = Math.max(start, Math.min(rows.length, start + count));
+            return Collections.unmodifiableList(Arrays.asList(rows).subList(start, end));
+        }
+
+        /**
+         * @return the number of patients with a BMI value
+         */
+        public int getPatientsWithBmi() {
+            return withBmi;
+        }
+
+        /**
+         * @return the levels of the percentiles, between 0 and 1
+         */
+        public double[] getPercentileLevels() {
+            return levels.clone();
+        }
+
+        /**
+         * @return the percentiles of the latest BMI over the patients, NaN if no
+         * patient has a BMI value
+         */
+        public double[] getPercentiles() {
+            return percentiles.clone();
+        }
+
+        /**
+         * @return the number of the pass which created the snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /** the registry */
+    private final PatientRegistry registry;
+
+    /** the period of the change of the BMI */
+    private final Duration period;
+
+    /** the levels of the percentiles */
+    private final double[] levels;
+
+    /** the rows of all patients, by patient id */
+    private final ConcurrentHashMap<Comparable, Row> rows = new ConcurrentHashMap<>();
+
+    /**
+     * the ids of the patients changed or removed and not aggregated since, with the
+     * number of their latest change, so that a change during a pass is not lost
+     */
+    private final ConcurrentHashMap<Comparable, Long> changed = new ConcurrentHashMap<>();
+
+    /** numbers the changes */
+    private final AtomicLong changes = new AtomicLong();
+
+    /** true while a pass is scheduled and has not started */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** the patients which could not be aggregated, by id; used on the aggregator thread only */
+    private final Map<Comparable, Failure> failures = new HashMap<>();
+
+    /** the time of the pass scheduled for retries, in milliseconds since the epoch */
+    private long retryPassAt;
+
+    /** true if the order changed since the last snapshot */
+    private volatile boolean reordered;
+
+    private final CopyOnWriteArrayList<Consumer<Snapshot>> snapshotListeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService executor;
+
+    private final PatientRegistry.Listener listener = new PatientRegistry.Listener() {
+        @Override
+        public void patientUpdated(Patient patient) {
+            changed(patient.getPatientid());
+            schedule();
+        }
+
+        @Override
+        public void patientRemoved(Patient patient) {
+            changed(patient.getPatientid());
+            schedule();
+        }
+    };
+
+    /** the delay between a change and the pass aggregating it, in milliseconds */
+    private volatile long delay = 200;
+
+    /** the order of the rows */
+    private volatile Comparator<Row> order = BY_ID;
+
+    private volatile Snapshot snapshot;
+
+    private long passes;
+
+    /**
+     * the failures to aggregate a patient since it last succeeded
+     */
+    private static final class Failure {
+
+        /** the number of the change which failed */
+        private long change;
+
+        /** the number of failed attempts for the change */
+        private int attempts;
+
+        /** the time of the next attempt in milliseconds since the epoch */
+        private long retryAt;
+    }
+
+
+    /**
+     * creates an aggregator with the change over 30 days and the 10th, 25th, 50th,
+     * 75th and 90th percentiles
+     * @param registry the registry
+     */
+    public BmiAggregator(PatientRegistry registry) {
+        this(registry, Duration.ofDays(30), 0.1, 0.25, 0.5, 0.75, 0.9);
+    }
+
+    /**
+     * @param registry the registry
+     * @param period the period of the change of the BMI
+     * @param levels the levels of the percentiles, between 0 and 1
+     */
+    public BmiAggregator(PatientRegistry registry, Duration period, double... levels) {
+        if (registry == null || period == null) {
+            throw new IllegalArgumentException("Null 'registry' or 'period' argument.");
+        }
+        for (double level : levels) {
+            if (!(level >= 0 && level <= 1)) {
+                throw new IllegalArgumentException("The levels must be between 0 and 1.");
+            }
+        }
+        this.registry = registry;
+        this.period = period;
+        this.levels = levels.clone();
+        this.snapshot = new Snapshot(new Row[0], this.levels, nanPercentiles(), 0, 0);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bmi-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * starts listening to the registry and aggregates all its patients
+     */
+    public void start() {
+        registry.addListener(listener);
+        for (Patient patient : registry.getPatients()) {
+            changed(patient.getPatientid());
+        }
+        scheduled.set(true);
+        executor.execute(this::pass);
+    }
+
+    private void changed(Comparable id) {
+        changed.put(id, changes.incrementAndGet());
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::pass, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * reads the changed patients and publishes a new snapshot if a row or the order
+     * changed
+     */
+    private void pass() {
+        scheduled.set(false);
+        boolean reorder = reordered;
+        reordered = false;
+
+        boolean updated = false;
+        long now = System.currentTimeMillis();
+        long nextRetry = Long.MAX_VALUE;
+        for (Map.Entry<Comparable, Long> entry : changed.entrySet()) {
+            Comparable id = entry.getKey();
+            long change = entry.getValue();
+            Failure failure = failures.get(id);
+            if (failure != null && failure.change == change && now < failure.retryAt) {
+                nextRetry = Math.min(nextRetry, failure.retryAt);
+                continue;
+            }
+            try {
+                // null if the patient was removed
+                Row row = registry.read(id, this::aggregate);
+                if (row != null) {
+                    rows.put(id, row);
+                } else {
+                    rows.remove(id);
+                }
+                // kept if the patient changed again while it was read
+                changed.remove(id, change);
+                failures.remove(id);
+                updated = true;
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    LOG.log(Level.WARNING, "Cannot aggregate patient " + id + ", it is read again up to "
+                            + MAX_ATTEMPTS + " times.", e);
+                    failure = new Failure();
+                    failures.put(id, failure);
+                }
+                if (failure.change != change) {
+                    failure.change = change;
+                    failure.attempts = 0;
+                }
+                if (++failure.attempts >= MAX_ATTEMPTS) {
+                    // left until the patient changes again
+                    changed.remove(id, change);
+                } else {
+                    failure.retryAt = now + (Math.max(delay, MIN_RETRY_MILLIS) << (failure.attempts - 1));
+                    nextRetry = Math.min(nextRetry, failure.retryAt);
+                }
+            }
+        }
+        if (nextRetry != Long.MAX_VALUE && (retryPassAt <= now || nextRetry < retryPassAt)) {
+            executor.schedule(this::pass, nextRetry - now, TimeUnit.MILLISECONDS);
+            retryPassAt = nextRetry;
+        }
+        if (!updated && !reorder && passes > 0) {
+            return;
+        }
+
+        Row[] all = rows.values().toArray(new Row[0]);
+        Arrays.sort(all, order);
+        double[] latest = new double[all.length];
+        int n = 0;
+        for (Row row : all) {
+            if (!Double.isNaN(row.latest)) {
+                latest[n++] = row.latest;
+            }
+        }
+        Arrays.sort(latest, 0, n);
+        double[] percentiles = nanPercentiles();
+        for (int i = 0; n > 0 && i < levels.length; i++) {
+            percentiles[i] = percentile(latest, n, levels[i]);
+        }
+
+        Snapshot result = new Snapshot(all, levels, percentiles, n, ++passes);
+        snapshot = result;
+        for (Consumer<Snapshot> snapshotListener : snapshotListeners) {
+            try {
+                snapshotListener.accept(result);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Snapshot listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * @param patient the patient, read under its stripe lock
+     * @return the aggregated BMI of the patient
+     */
+    private Row aggregate(Patient patient) {
+        MeasurementSeries bmi = patient.getBmiValues();
+        if (bmi.isEmpty()) {
+            return new Row(patient.getPatientid(), Double.NaN, 0, Double.NaN, 0);
+        }
+        int last = bmi.lastIndex();
+        long time = bmi.getTime(last);
+        double latest = bmi.getValue(last);
+        int before = bmi.indexAtOrBefore(time - period.toMillis());
+        double delta = (before < 0) ? Double.NaN : latest - bmi.getValue(before);
+        return new Row(patient.getPatientid(), latest, time, delta, bmi.size());
+    }
+
+    /**
+     * @return the percentile of the sorted values, interpolated between the nearest ranks
+     */
+    private static double percentile(double[] sorted, int n, double level) {
+        double position = level * (n - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(n - 1, lower + 1);
+        return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private double[] nanPercentiles() {
+        double[] result = new double[levels.length];
+        Arrays.fill(result, Double.NaN);
+        return result;
+    }
+
+    /**
+     * @return the latest snapshot
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param snapshotListener the listener, called with each new snapshot on the
+     * thread of the aggregator
+     */
+    public void addSnapshotListener(Consumer<Snapshot> snapshotListener) {
+        snapshotListeners.add(snapshotListener);
+    }
+
+    /**
+     * @param snapshotListener the listener to remove
+     */
+    public void removeSnapshotListener(Consumer<Snapshot> snapshotListener) {
+        snapshotListeners.remove(snapshotListener);
+    }
+
+    /**
+     * @return the order of the rows
+     */
+    public Comparator<Row> getOrder() {
+        return order;
+    }
+
+    /**
+     * sets the order of the rows and aggregates again
+     * @param order the order of the rows, e.g. {@link #BY_ID} or {@link #BY_LATEST}
+     */
+    public void setOrder(Comparator<Row> order) {
+        if (order == null) {
+            throw new IllegalArgumentException("Null 'order' argument.");
+        }
+        this.order = order;
+        reordered = true;
+        schedule();
+    }
+
+    /**
+     * @return the delay between a change and the pass aggregating it
+     */
+    public Duration getDelay() {
+        return Duration.ofMillis(delay);
+    }
+
+    /**
+     * @param delay the delay between a change and the pass aggregating it; changes
+     * within the delay are aggregated in one pass
+     */
+    public void setDelay(Duration delay) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("The delay must not be negative.");
+        }
+        this.delay = delay.toMillis();
+    }
+
+    /**
+     * @return the period of the change of the BMI
+     */
+    public Duration getPeriod() {
+        return period;
+    }
+
+    /**
+     * stops listening to the registry and stops the thread of the aggregator
+     */
+    @Override
+    public void close() {
+        registry.removeListener(listener);
+        executor.shutdownNow();
+    }
+}
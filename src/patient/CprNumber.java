@@ -0,0 +1,89 @@
+
+package patient;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * validation and normalisation of Danish CPR numbers, the default patient id.
+ * a CPR number consists of the birth date DDMMYY followed by a four digit serial
+ * number, optionally separated by a hyphen. the first digit of the serial number
+ * together with the two digit year determines the century of birth.
+ * the modulus 11 check is not applied since it is not guaranteed for numbers
+ * issued after 2007
+ * @since 1.0
+ */
+public final class CprNumber {
+
+    private CprNumber() {
+    }
+
+    /**
+     * normalises a CPR number to its ten digit form without hyphen
+     * @param cpr the CPR number, either DDMMYYSSSS or DDMMYY-SSSS
+     * @return the ten digit CPR number, or null if cpr is not a valid CPR number
+     */
+    public static String normalize(CharSequence cpr) {
+
+        if (cpr == null) {
+            return null;
+        }
+
+        int length = cpr.length();
+        if (length != 10 && !(length == 11 && cpr.charAt(6) == '-')) {
+            return null;
+        }
+
+        char[] digits = new char[10];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = cpr.charAt(i);
+            if (length == 11 && i == 6) {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            digits[n++] = c;
+        }
+
+        int day = twoDigits(digits, 0);
+        int month = twoDigits(digits, 2);
+        int year = twoDigits(digits, 4);
+        int century = century(digits[6] - '0', year);
+
+        try {
+            LocalDate.of(century + year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * @param cpr the CPR number, either DDMMYYSSSS or DDMMYY-SSSS
+     * @return true if the CPR number is valid
+     */
+    public static boolean isValid(CharSequence cpr) {
+        return normalize(cpr) != null;
+    }
+
+    private static int twoDigits(char[] digits, int offset) {
+        return (digits[offset] - '0') * 10 + (digits[offset + 1] - '0');
+    }
+
+    /**
+     * @param serial the first digit of the serial number
+     * @param year the two digit year of birth
+     * @return the century of birth as defined by the CPR office
+     */
+    private static int century(int serial, int year) {
+        if (serial <= 3) {
+            return 1900;
+        }
+        if (serial == 4 || serial == 9) {
+            return (year <= 36) ? 2000 : 1900;
+        }
+        return (year <= 57) ? 2000 : 1800;
+    }
+}
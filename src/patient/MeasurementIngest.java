@@ -0,0 +1,537 @@
+
+package patient;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * bulk ingestion of weight measurements into the patients of a registry.
+ * records of (patient id, time point, weight in kg) are read from CSV or binary
+ * files, grouped by patient, and appended per patient in one batch.
+ * <p>
+ * the CSV format has one record per line: <code>patientId,timestamp,value</code>
+ * where the timestamp is either milliseconds since the epoch or an ISO-8601 instant.
+ * empty lines, lines starting with '#' and a header line are skipped.
+ * the binary format is a sequence of records written by
+ * {@link #writeBinaryRecord(DataOutput, String, long, double)}.
+ * in both formats, weights which are not finite and positive are rejected.
+ * <p>
+ * records are parsed directly from the input bytes; the patient id of consecutive
+ * records of the same patient is resolved only once, so sorted input is cheapest.
+ * an ingest instance is not thread safe, but several instances can ingest into the
+ * same registry concurrently
+ * @since 1.0
+ */
+public class MeasurementIngest {
+
+    /** the number of buffered records after which the batches are applied */
+    private static final int DEFAULT_FLUSH_THRESHOLD = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** the registry of the patients */
+    private final PatientRegistry registry;
+
+    /** if true, unknown patients are registered, otherwise their records are skipped */
+    private boolean createMissingPatients;
+
+    /** the number of buffered records after which the batches are applied */
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+
+    /** the buffered records per patient */
+    private final Map<Patient, Batch> batches = new IdentityHashMap<>();
+
+    /** the number of buffered records */
+    private int buffered;
+
+    /** the id bytes and patient of the previous record */
+    private byte[] lastId = new byte[32];
+    private int lastIdLength = -1;
+    private Patient lastPatient;
+
+    /** the counters of the current ingestion */
+    private Summary summary;
+
+
+    /**
+     * creates an ingest into the given registry
+     * @param registry the registry of the patients
+     */
+    public MeasurementIngest(PatientRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Null 'registry' argument.");
+        }
+        this.registry = registry;
+    }
+
+
+    /**
+     * ingests a CSV file
+     * @param file the file to read
+     * @return the counters of the ingestion
+     * @throws IOException if the file cannot be read
+     */
+    public Summary ingestCsv(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return ingestCsv(in);
+        }
+    }
+
+    /**
+     * ingests CSV records from a stream; the stream is not closed
+     * @param in the stream to read
+     * @return the counters of the ingestion
+     * @throws IOException if the stream cannot be read
+     */
+    public Summary ingestCsv(InputStream in) throws IOException {
+
+        begin();
+
+        byte[] buffer = new byte[1 << 16];
+        int start = 0;
+        int end = 0;
+        long lineNumber = 0;
+
+        while (true) {
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                break;
+            }
+            end += read;
+
+            int lineStart = 0;
+            for (int i = start; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    parseCsvLine(buffer, lineStart, i, ++lineNumber);
+                    lineStart = i + 1;
+                }
+            }
+
+            // move the incomplete line to the front, grow if a line fills the buffer
+            int remaining = end - lineStart;
+            if (remaining == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+            }
+            start = remaining;
+            end = remaining;
+        }
+        if (end > 0) {
+            parseCsvLine(buffer, 0, end, ++lineNumber);
+        }
+
+        return finish();
+    }
+
+    /**
+     * ingests a binary file
+     * @param file the file to read
+     * @return the counters of the ingestion
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public Summary ingestBinary(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return ingestBinary(in);
+        }
+    }
+
+    /**
+     * ingests binary records from a stream; the stream is not closed
+     * @param in the stream to read
+     * @return the counters of the ingestion
+     * @throws IOException if the stream cannot be read or is truncated
+     */
+    public Summary ingestBinary(InputStream in) throws IOException {
+
+        begin();
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        byte[] id = new byte[32];
+
+        while (true) {
+            int length = data.read();
+            if (length < 0) {
+                break;
+            }
+            try {
+                length = (length << 8) | data.readUnsignedByte();
+                if (length > id.length) {
+                    id = new byte[Math.max(length, id.length << 1)];
+                }
+                data.readFully(id, 0, length);
+                long millis = data.readLong();
+                double value = data.readDouble();
+                summary.rows++;
+                accept(id, 0, length, millis, value);
+            } catch (EOFException e) {
+                throw new IOException("Truncated record after " + summary.rows + " records.", e);
+            }
+        }
+
+        return finish();
+    }
+
+    /**
+     * writes one record in the binary format read by {@link #ingestBinary(InputStream)}
+     * @param out the output to write to
+     * @param patientId the patient id
+     * @param millis the time point in milliseconds since the epoch
+     * @param value the weight in kg
+     * @throws IOException if the record cannot be written
+     */
+    public static void writeBinaryRecord(DataOutput out, String patientId, long millis, double value) throws IOException {
+        byte[] id = patientId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 0xFFFF) {
+            throw new IllegalArgumentException("Patient id is too long.");
+        }
+        out.writeShort(id.length);
+        out.write(id);
+        out.writeLong(millis);
+        out.writeDouble(value);
+    }
+
+    private void parseCsvLine(byte[] b, int from, int to, long lineNumber) {
+
+        if (to > from && b[to - 1] == '\r') {
+            to--;
+        }
+        if (to <= from || b[from] == '#') {
+            return;
+        }
+
+        int comma1 = indexOf(b, from, to, (byte) ',');
+        int comma2 = (comma1 < 0) ? -1 : indexOf(b, comma1 + 1, to, (byte) ',');
+        if (comma2 < 0) {
+            summary.rows++;
+            summary.rejected++;
+            return;
+        }
+
+        long millis = parseTimestamp(b, comma1 + 1, comma2);
+        double value = parseDouble(b, comma2 + 1, to);
+        if (millis == Long.MIN_VALUE || Double.isNaN(value)) {
+            // the first line may be a header
+            if (lineNumber > 1) {
+                summary.rows++;
+                summary.rejected++;
+            }
+            return;
+        }
+
+        summary.rows++;
+        accept(b, from, comma1, millis, value);
+    }
+
+    private void accept(byte[] id, int from, int to, long millis, double value) {
+
+        if (!(value > 0) || Double.isInfinite(value)) {
+            // NaN or infinite values would poison the statistics of the patient for good
+            summary.rejected++;
+            return;
+        }
+
+        Patient patient = resolve(id, from, to);
+        if (patient == null) {
+            summary.unknownPatients++;
+            return;
+        }
+
+        Batch batch = batches.get(patient);
+        if (batch == null) {
+            batch = new Batch();
+            batches.put(patient, batch);
+        }
+        batch.add(millis, value);
+        summary.accepted++;
+
+        if (++buffered >= flushThreshold) {
+            flush();
+        }
+    }
+
+    /**
+     * resolves the patient of an id, reusing the patient of the previous record
+     * if the id bytes are the same
+     */
+    private Patient resolve(byte[] id, int from, int to) {
+
+        int length = to - from;
+        if (length == lastIdLength && rangeEquals(lastId, id, from, length)) {
+            return lastPatient;
+        }
+
+        String text = new String(id, from, length, StandardCharsets.UTF_8).trim();
+        Patient patient = registry.lookup(text);
+        if (patient == null && createMissingPatients && !text.isEmpty()) {
+            try {
+                patient = registry.getOrRegister(text);
+            } catch (IllegalArgumentException e) {
+                patient = null;
+            }
+        }
+
+        if (length > lastId.length) {
+            lastId = new byte[Math.max(length, lastId.length << 1)];
+        }
+        System.arraycopy(id, from, lastId, 0, length);
+        lastIdLength = length;
+        lastPatient = patient;
+        return patient;
+    }
+
+    private void begin() {
+        summary = new Summary();
+        lastIdLength = -1;
+        lastPatient = null;
+    }
+
+    private Summary finish() {
+        flush();
+        Summary result = summary;
+        summary = null;
+        return result;
+    }
+
+    /**
+     * applies the buffered batches to their patients; the records of a patient
+     * removed from the registry since they were read count as unknown patients
+     */
+    private void flush() {
+        for (Map.Entry<Patient, Batch> entry : batches.entrySet()) {
+            final Batch batch = entry.getValue();
+            if (registry.update(entry.getKey().getPatientid(),
+                    p -> p.addWeightMeasurements(batch.millis, batch.values, batch.size))) {
+                summary.patients++;
+            } else {
+                summary.accepted -= batch.size;
+                summary.unknownPatients += batch.size;
+            }
+        }
+        batches.clear();
+        buffered = 0;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean rangeEquals(byte[] a, byte[] b, int from, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the timestamp in milliseconds, or Long.MIN_VALUE if it is malformed
+     */
+    private static long parseTimestamp(byte[] b, int from, int to) {
+
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+        if (from == to) {
+            return Long.MIN_VALUE;
+        }
+
+        boolean negative = b[from] == '-';
+        int i = negative ? from + 1 : from;
+        long millis = 0;
+        for (; i < to; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9 || millis > Long.MAX_VALUE / 10) {
+                break;
+            }
+            millis = millis * 10 + d;
+        }
+        if (i == to && i > (negative ? from + 1 : from)) {
+            return negative ? -millis : millis;
+        }
+
+        try {
+            return Instant.parse(new String(b, from, to - from, StandardCharsets.US_ASCII)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the value, or NaN if it is malformed
+     */
+    private static double parseDouble(byte[] b, int from, int to) {
+
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+
+        // plain decimals are parsed exactly without allocation: the mantissa and the
+        // power of ten are exact doubles, so one division rounds correctly
+        boolean negative = from < to && b[from] == '-';
+        int i = negative ? from + 1 : from;
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c >= '0' && c <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else {
+                break;
+            }
+        }
+        if (i == to && digits > 0) {
+            double value = (fraction > 0) ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+            return negative ? -value : value;
+        }
+
+        try {
+            return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return true if unknown patients are registered while ingesting
+     */
+    public boolean isCreateMissingPatients() {
+        return createMissingPatients;
+    }
+
+    /**
+     * @param createMissingPatients if true, unknown patients with valid ids are
+     * registered, otherwise their records are counted and skipped
+     */
+    public void setCreateMissingPatients(boolean createMissingPatients) {
+        this.createMissingPatients = createMissingPatients;
+    }
+
+    /**
+     * @return the number of buffered records after which the batches are applied
+     */
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * @param flushThreshold the number of buffered records after which the batches
+     * are applied; bounds the memory used for grouping
+     */
+    public void setFlushThreshold(int flushThreshold) {
+        if (flushThreshold < 1) {
+            throw new IllegalArgumentException("The flush threshold must be positive.");
+        }
+        this.flushThreshold = flushThreshold;
+    }
+
+
+    /**
+     * the buffered records of one patient
+     */
+    private static final class Batch {
+
+        long[] millis = new long[16];
+        double[] values = new double[16];
+        int size;
+
+        void add(long t, double value) {
+            if (size == millis.length) {
+                millis = Arrays.copyOf(millis, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+            }
+            millis[size] = t;
+            values[size] = value;
+            size++;
+        }
+    }
+
+
+    /**
+     * the counters of one ingestion
+     */
+    public static final class Summary {
+
+        long rows;
+        long accepted;
+        long rejected;
+        long unknownPatients;
+        long patients;
+
+        /**
+         * @return the number of records read
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the number of records added to a patient
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * @return the number of malformed records and of weights which are not
+         * finite and positive
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return the number of records of patients not in the registry
+         */
+        public long getUnknownPatients() {
+            return unknownPatients;
+        }
+
+        /**
+         * @return the number of patient batches applied; a patient is counted once per flush
+         */
+        public long getPatients() {
+            return patients;
+        }
+
+        @Override
+        public String toString() {
+            return "rows=" + rows + ", accepted=" + accepted + ", rejected=" + rejected
+                    + ", unknown patients=" + unknownPatients + ", patient batches=" + patients;
+        }
+    }
+}
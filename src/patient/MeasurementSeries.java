@@ -0,0 +1,366 @@
+
+package patient;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * a compact series of measurements, stored as two parallel primitive arrays of
+ * time points (milliseconds since the epoch) and values, sorted by time.
+ * several measurements may share the same time point; they are kept in the order
+ * in which they were added.
+ * <p>
+ * measurements usually arrive in time order, so adding at the end of the series is
+ * amortised O(1); an out of order measurement is inserted at its position.
+ * the series is not thread safe
+ * @since 1.0
+ */
+public class MeasurementSeries {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private static final long[] NO_TIMES = new long[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    /** the time points in milliseconds since the epoch, sorted */
+    private long[] times = NO_TIMES;
+
+    /** the measured values, parallel to times */
+    private double[] values = NO_VALUES;
+
+    /** the number of measurements */
+    private int size;
+
+
+    /**
+     * creates an empty series
+     */
+    public MeasurementSeries() {
+    }
+
+    /**
+     * creates an empty series with room for the given number of measurements
+     * @param capacity the initial capacity
+     */
+    public MeasurementSeries(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+
+    /**
+     * adds a measurement
+     * @param millis the time point in milliseconds since the epoch
+     * @param value the measured value
+     * @return the index at which the measurement was stored
+     */
+    public int add(long millis, double value) {
+
+        ensureCapacity(size + 1);
+
+        int index = size;
+        if (size > 0 && millis < times[size - 1]) {
+            // out of order: insert after all measurements at or before millis
+            index = upperBound(millis);
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+        }
+        times[index] = millis;
+        values[index] = value;
+        size++;
+        return index;
+    }
+
+    /**
+     * adds a batch of measurements. the batch does not need to be sorted; it is
+     * merged into the series in a single pass
+     * @param millis the time points in milliseconds since the epoch
+     * @param vals the measured values
+     * @param count the number of measurements to take from the arrays
+     */
+    public void addAll(long[] millis, double[] vals, int count) {
+
+        if (count <= 0) {
+            return;
+        }
+
+        long[] t = millis;
+        double[] v = vals;
+        if (!isSorted(millis, count)) {
+            t = new long[count];
+            v = new double[count];
+            sortCopy(millis, vals, count, t, v);
+        }
+
+        ensureCapacity(size + count);
+
+        if (size == 0 || t[0] >= times[size - 1]) {
+            System.arraycopy(t, 0, times, size, count);
+            System.arraycopy(v, 0, values, size, count);
+            size += count;
+            return;
+        }
+
+        // merge from the back so that the existing arrays can be used in place;
+        // existing measurements go first on equal time points
+        int i = size - 1;
+        int j = count - 1;
+        int k = size + count - 1;
+        while (j >= 0) {
+            if (i >= 0 && times[i] > t[j]) {
+                times[k] = times[i];
+                values[k] = values[i];
+                i--;
+            } else {
+                times[k] = t[j];
+                values[k] = v[j];
+                j--;
+            }
+            k--;
+        }
+        size += count;
+    }
+
+    /**
+     * @return the number of measurements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the series holds no measurements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index the index of the measurement
+     * @return the time point in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * @param index the index of the measurement
+     * @return the measured value
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * replaces the value of a measurement
+     * @param index the index of the measurement
+     * @param value the new value
+     */
+    public void setValue(int index, double value) {
+        checkIndex(index);
+        values[index] = value;
+    }
+
+    /**
+     * @return the index of the last measurement, or -1 if the series is empty
+     */
+    public int lastIndex() {
+        return size - 1;
+    }
+
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the index of the first measurement at or after millis, or size()
+     * if there is none
+     */
+    public int lowerBound(long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the index of the first measurement after millis, or size()
+     * if there is none
+     */
+    public int upperBound(long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the index of the last measurement at or before millis, or -1 if there is none
+     */
+    public int indexAtOrBefore(long millis) {
+        return upperBound(millis) - 1;
+    }
+
+    /**
+     * @param from the start of the range (inclusive) in milliseconds since the epoch
+     * @param to the end of the range (exclusive) in milliseconds since the epoch
+     * @return the number of measurements in the range
+     */
+    public int count(long from, long to) {
+        return (to <= from) ? 0 : lowerBound(to) - lowerBound(from);
+    }
+
+    /**
+     * copies the measurements in a time range into a new series
+     * @param from the start of the range (inclusive) in milliseconds since the epoch
+     * @param to the end of the range (exclusive) in milliseconds since the epoch
+     * @return a new series holding the measurements in the range
+     */
+    public MeasurementSeries range(long from, long to) {
+        int start = lowerBound(from);
+        int end = Math.max(start, lowerBound(to));
+        MeasurementSeries result = new MeasurementSeries(end - start);
+        System.arraycopy(times, start, result.times, 0, end - start);
+        System.arraycopy(values, start, result.values, 0, end - start);
+        result.size = end - start;
+        return result;
+    }
+
+    /**
+     * @return a copy of the time points
+     */
+    public long[] toTimeArray() {
+        return Arrays.copyOf(times, size);
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public double[] toValueArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * removes all measurements, keeping the allocated storage
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * shrinks the storage to the number of measurements
+     */
+    public void trimToSize() {
+        if (times.length != size) {
+            times = (size == 0) ? NO_TIMES : Arrays.copyOf(times, size);
+            values = (size == 0) ? NO_VALUES : Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * converts the series into a JFreeChart time series, e.g. for charting.
+     * if several measurements fall into the same time period, the last one is used
+     * @param key the key of the time series
+     * @param periodClass the time period class, e.g. Day.class or Second.class
+     * @param zone the time zone for the time periods
+     * @return a new time series
+     */
+    public TimeSeries toTimeSeries(Comparable key, Class periodClass, TimeZone zone) {
+
+        TimeSeries series = new TimeSeries(key);
+        RegularTimePeriod last = null;
+        for (int i = 0; i < size; i++) {
+            RegularTimePeriod period = RegularTimePeriod.createInstance(periodClass, new Date(times[i]), zone);
+            if (period.equals(last)) {
+                series.update(period, values[i]);
+            } else {
+                series.add(period, values[i], false);
+            }
+            last = period;
+        }
+        series.fireSeriesChanged();
+        return series;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > times.length) {
+            // grow by half, as measurements are mostly appended over a long time
+            int newCapacity = Math.max(Math.max(DEFAULT_CAPACITY, capacity), times.length + (times.length >> 1));
+            times = Arrays.copyOf(times, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private static boolean isSorted(long[] millis, int count) {
+        for (int i = 1; i < count; i++) {
+            if (millis[i] < millis[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * sorts a batch by time into the destination arrays with a bottom up merge sort,
+     * keeping the order of measurements with the same time point
+     */
+    private static void sortCopy(long[] millis, double[] vals, int count, long[] t, double[] v) {
+
+        long[] srcT = Arrays.copyOf(millis, count);
+        double[] srcV = Arrays.copyOf(vals, count);
+        long[] dstT = t;
+        double[] dstV = v;
+
+        for (int width = 1; width < count; width <<= 1) {
+            for (int low = 0; low < count; low += width << 1) {
+                int mid = Math.min(low + width, count);
+                int high = Math.min(low + (width << 1), count);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; k++) {
+                    if (i < mid && (j >= high || srcT[i] <= srcT[j])) {
+                        dstT[k] = srcT[i];
+                        dstV[k] = srcV[i++];
+                    } else {
+                        dstT[k] = srcT[j];
+                        dstV[k] = srcV[j++];
+                    }
+                }
+            }
+            long[] swapT = srcT;
+            srcT = dstT;
+            dstT = swapT;
+            double[] swapV = srcV;
+            srcV = dstV;
+            dstV = swapV;
+        }
+
+        if (srcT != t) {
+            System.arraycopy(srcT, 0, t, 0, count);
+            System.arraycopy(srcV, 0, v, 0, count);
+        }
+    }
+}
@@ -2,8 +2,11 @@
 package patient;
 
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoField;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
 import org.jfree.data.time.Day;
 import org.jfree.data.time.TimeSeries;
 
@@ -15,9 +18,8 @@ public class Patient {
 
     /**
      * creates a new patient with the given id
-     * TODO: CHECK THAT THIS ID IS UNIQUE
-     * TODO: CHECK IF THAT ID IS CORRECT (f.eks. CPR number)
-     * this constructor returns null if the id is not unique or correct 
+     * the id is not checked here; patients with validated and unique ids are
+     * created by {@link PatientRegistry#register(Comparable)}
      * @param id the comparable id of this patient
      * 
      */
@@ -28,33 +30,210 @@ public class Patient {
     
     Comparable patientid;
     
-    TimeSeries weight_measurements = new TimeSeries("Vægtmålinger");
-    TimeSeries bmi_values = new TimeSeries("BMI");
+    /** the weight measurements in kg */
+    MeasurementSeries weight_measurements = new MeasurementSeries();
+    
+    /** the body mass index values in kg/m^2, derived from weights and heights */
+    MeasurementSeries bmi_values = new MeasurementSeries();
+    
+    /** the height measurements in metres */
+    MeasurementSeries height_measurements = new MeasurementSeries();
+    
+    /** the rolling statistics of the body mass index, per window */
+    private final Map<Duration, RollingStatistics> bmi_statistics = new LinkedHashMap<>();
     
     
     /**
      * this method - when called - adds a weight measurement - at the current time
-     * by calling addWeightMeasurementAtDay
+     * by calling addWeightMeasurementAtDate
+     * @param weight the weight in kg
      */
-    public void addWeightMeasurement(int weight) {
+    public void addWeightMeasurement(double weight) {
         addWeightMeasurementAtDate(weight, Instant.now());
     }
     
     /**
      * this method - when called - adds a weight measurement - at the specified time point
      * this method overloads the method addWeightMeasurement
+     * @param weight the weight in kg
+     * @param i the time point of the measurement
+     */
+    public void addWeightMeasurementAtDate(double weight, Instant i) {
+        
+        long millis = i.toEpochMilli();
+        weight_measurements.add(millis, weight);
+        
+        //derive the BMI if the height is known
+        if (!height_measurements.isEmpty()) {
+            addBmi(millis, bmi(weight, heightAt(millis)));
+        }
+    }
+    
+    /**
+     * adds a batch of weight measurements, e.g. from a backfill of scale data.
+     * the batch does not need to be sorted; it is merged in a single pass and the BMI
+     * values and rolling statistics are updated once for the whole batch
+     * @param millis the time points in milliseconds since the epoch
+     * @param weights the weights in kg
+     * @param count the number of measurements to take from the arrays
      */
-    public void addWeightMeasurementAtDate(int weight, Instant i) {
+    public void addWeightMeasurements(long[] millis, double[] weights, int count) {
         
-        //retrieve the day from the instant
-        int day = i.get(ChronoField.DAY_OF_MONTH);
+        weight_measurements.addAll(millis, weights, count);
         
-        //retrieve the month
-        int month = i.get(ChronoField.MONTH_OF_YEAR);
+        if (height_measurements.isEmpty() || count <= 0) {
+            return;
+        }
+        double[] bmis = new double[count];
+        for (int n = 0; n < count; n++) {
+            bmis[n] = bmi(weights[n], heightAt(millis[n]));
+        }
+        bmi_values.addAll(millis, bmis, count);
+        for (RollingStatistics statistics : bmi_statistics.values()) {
+            rebuild(statistics);
+        }
+    }
+    
+    /**
+     * this method - when called - adds a height measurement - at the specified time point
+     * the BMI values from this time point until the next height measurement are
+     * derived again with the new height
+     * @param height the height in metres
+     * @param i the time point of the measurement
+     */
+    public void addHeightMeasurementAtDate(double height, Instant i) {
         
-        //retrieve the year
-        int year = i.get(ChronoField.YEAR);
+        height_measurements.add(i.toEpochMilli(), height);
         
-        weight_measurements.add(new Day(day, month, year), weight);
+        //the new height changes BMI values which are already derived; this is rare
+        //so all of them are derived again
+        bmi_values.clear();
+        for (int n = 0; n < weight_measurements.size(); n++) {
+            long millis = weight_measurements.getTime(n);
+            bmi_values.add(millis, bmi(weight_measurements.getValue(n), heightAt(millis)));
+        }
+        for (RollingStatistics statistics : bmi_statistics.values()) {
+            rebuild(statistics);
+        }
+    }
+    
+    /**
+     * maintains rolling statistics of the body mass index over the given window,
+     * e.g. the last 30 days. the statistics are kept up to date as measurements arrive
+     * @param window the length of the window, ending at the latest BMI value
+     * @return the rolling statistics for this window
+     */
+    public RollingStatistics addBmiWindow(Duration window) {
+        RollingStatistics statistics = bmi_statistics.get(window);
+        if (statistics == null) {
+            statistics = new RollingStatistics(window);
+            rebuild(statistics);
+            bmi_statistics.put(window, statistics);
+        }
+        return statistics;
+    }
+    
+    /**
+     * @param window the length of the window
+     * @return the rolling statistics of the body mass index for this window, or null
+     * if the window has not been added by {@link #addBmiWindow(Duration)}
+     */
+    public RollingStatistics getBmiStatistics(Duration window) {
+        return bmi_statistics.get(window);
+    }
+    
+    /**
+     * @param weight the weight in kg
+     * @param height the height in metres
+     * @return the body mass index for a given height and weight
+     *  bodymass [kg]/height[m]*height[m]
+     */
+    public static double bmi(double weight, double height) {
+        return weight / (height * height);
+    }
+    
+    /**
+     * @param millis a time point in milliseconds since the epoch
+     * @return the latest height at or before the time point; the first height if
+     * the time point is before all height measurements
+     */
+    private double heightAt(long millis) {
+        int index = height_measurements.indexAtOrBefore(millis);
+        return height_measurements.getValue(Math.max(index, 0));
+    }
+    
+    /**
+     * adds a BMI value and updates the rolling statistics
+     */
+    private void addBmi(long millis, double value) {
+        bmi_values.add(millis, value);
+        for (RollingStatistics statistics : bmi_statistics.values()) {
+            if (millis >= statistics.getLastTime()) {
+                statistics.add(millis, value);
+            } else {
+                //a late value - only the window of the latest value is needed
+                rebuild(statistics);
+            }
+        }
+    }
+    
+    /**
+     * fills the statistics with the BMI values in its window
+     */
+    private void rebuild(RollingStatistics statistics) {
+        statistics.clear();
+        if (bmi_values.isEmpty()) {
+            return;
+        }
+        long latest = bmi_values.getTime(bmi_values.lastIndex());
+        for (int n = bmi_values.upperBound(latest - statistics.getWindow().toMillis()); n < bmi_values.size(); n++) {
+            statistics.add(bmi_values.getTime(n), bmi_values.getValue(n));
+        }
+    }
+
+    /**
+     * @return the height measurements in metres
+     */
+    public MeasurementSeries getHeightMeasurements() {
+        return height_measurements;
+    }
+
+    /**
+     * @return the weight measurements in kg
+     */
+    public MeasurementSeries getWeightMeasurements() {
+        return weight_measurements;
+    }
+
+    /**
+     * @return the body mass index values in kg/m^2
+     */
+    public MeasurementSeries getBmiValues() {
+        return bmi_values;
+    }
+
+    /**
+     * @param zone the time zone for the days
+     * @return the weight measurements as a daily time series for charting; the last
+     * measurement of a day is used
+     */
+    public TimeSeries getWeightTimeSeries(TimeZone zone) {
+        return weight_measurements.toTimeSeries("Vægtmålinger", Day.class, zone);
+    }
+
+    /**
+     * @param zone the time zone for the days
+     * @return the body mass index values as a daily time series for charting; the
+     * last value of a day is used
+     */
+    public TimeSeries getBmiTimeSeries(TimeZone zone) {
+        return bmi_values.toTimeSeries("BMI", Day.class, zone);
+    }
+
+    /**
+     * @return the patient id
+     */
+    public Comparable getPatientid() {
+        return patientid;
     }
 }
@@ -0,0 +1,331 @@
+
+package patient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * a registry of patients indexed by their validated id. lookups are served by a
+ * concurrent hash index and can be done from any number of threads without locking.
+ * changes to a registered patient are made through {@link #update(Comparable, Consumer)},
+ * which serialises updates to the same patient on one of a fixed set of stripe locks,
+ * so that updates to different patients rarely contend.
+ * <p>
+ * ids are validated and normalised by an id policy before they are used as keys;
+ * by default ids must be CPR numbers, see {@link CprNumber}
+ * <p>
+ * {@link Listener}s are told about patients which are registered, updated through
+ * the registry or removed, e.g. to keep aggregates of the patients up to date
+ * @since 1.0
+ */
+public class PatientRegistry {
+
+    /**
+     * receives the changes of the patients of a registry. the methods are called on
+     * the thread making the change, after the stripe lock of the patient is released,
+     * so they should return quickly
+     */
+    public interface Listener {
+
+        /**
+         * @param patient the patient which was registered or updated
+         */
+        void patientUpdated(Patient patient);
+
+        /**
+         * @param patient the patient which was removed
+         */
+        default void patientRemoved(Patient patient) {
+        }
+    }
+
+    /**
+     * the default id policy: ids must be valid CPR numbers and are normalised
+     * to their ten digit form
+     */
+    public static final Function<Comparable, Comparable> CPR_IDS = new Function<Comparable, Comparable>() {
+        @Override
+        public Comparable apply(Comparable id) {
+            return (id instanceof CharSequence) ? CprNumber.normalize((CharSequence) id) : null;
+        }
+    };
+
+    /**
+     * an id policy which accepts any non null id as it is
+     */
+    public static final Function<Comparable, Comparable> ANY_IDS = new Function<Comparable, Comparable>() {
+        @Override
+        public Comparable apply(Comparable id) {
+            return id;
+        }
+    };
+
+    /** the number of stripe locks, a power of two */
+    private static final int STRIPES = 256;
+
+    /** the index from normalised id to patient */
+    private final ConcurrentHashMap<Comparable, Patient> patients;
+
+    /** the locks serialising updates to patients, selected by id hash */
+    private final Object[] stripes = new Object[STRIPES];
+
+    /** validates and normalises ids, returns null for invalid ids */
+    private final Function<Comparable, Comparable> idPolicy;
+
+    /** the listeners to changes of the patients */
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+
+    /**
+     * creates a registry which accepts CPR numbers as ids
+     * @param expectedPatients the expected number of patients, used to size the index
+     */
+    public PatientRegistry(int expectedPatients) {
+        this(expectedPatients, CPR_IDS);
+    }
+
+    /**
+     * creates a registry with the given id policy
+     * @param expectedPatients the expected number of patients, used to size the index
+     * @param idPolicy the function validating and normalising ids; it returns null
+     * for an invalid id
+     */
+    public PatientRegistry(int expectedPatients, Function<Comparable, Comparable> idPolicy) {
+
+        if (idPolicy == null) {
+            throw new IllegalArgumentException("Null 'idPolicy' argument.");
+        }
+        this.idPolicy = idPolicy;
+
+        // size the table so that it does not rehash below the expected number of patients
+        this.patients = new ConcurrentHashMap<>(Math.max(16, (int) (expectedPatients / 0.75f) + 1), 0.75f,
+                Runtime.getRuntime().availableProcessors());
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+
+    /**
+     * @return the function validating and normalising the ids of this registry
+     */
+    public Function<Comparable, Comparable> getIdPolicy() {
+        return idPolicy;
+    }
+
+    /**
+     * validates and normalises the given id with the id policy of this registry
+     * @param id the patient id
+     * @return the normalised id
+     * @throws IllegalArgumentException if the id is not valid
+     */
+    public Comparable normalizeId(Comparable id) {
+        Comparable key = (id == null) ? null : idPolicy.apply(id);
+        if (key == null) {
+            throw new IllegalArgumentException("Invalid patient id: " + id);
+        }
+        return key;
+    }
+
+    /**
+     * creates and registers a new patient with the given id
+     * @param id the patient id
+     * @return the new patient
+     * @throws IllegalArgumentException if the id is not valid or already registered
+     */
+    public Patient register(Comparable id) {
+        Comparable key = normalizeId(id);
+        Patient patient = new Patient(key);
+        if (patients.putIfAbsent(key, patient) != null) {
+            throw new IllegalArgumentException("Patient id is not unique: " + id);
+        }
+        fireUpdated(patient);
+        return patient;
+    }
+
+    /**
+     * returns the patient with the given id, registering a new patient if there is none
+     * @param id the patient id
+     * @return the registered patient
+     * @throws IllegalArgumentException if the id is not valid
+     */
+    public Patient getOrRegister(Comparable id) {
+        Comparable key = normalizeId(id);
+        Patient patient = patients.get(key);
+        if (patient != null) {
+            return patient;
+        }
+        Patient[] created = new Patient[1];
+        patient = patients.computeIfAbsent(key, k -> created[0] = new Patient(k));
+        if (created[0] != null) {
+            fireUpdated(patient);
+        }
+        return patient;
+    }
+
+    /**
+     * looks up the patient with the given id
+     * @param id the patient id, in any form accepted by the id policy
+     * @return the patient, or null if the id is invalid or not registered
+     */
+    public Patient lookup(Comparable id) {
+        Comparable key = (id == null) ? null : idPolicy.apply(id);
+        return (key == null) ? null : patients.get(key);
+    }
+
+    /**
+     * @param id the patient id
+     * @return true if a patient with this id is registered
+     */
+    public boolean contains(Comparable id) {
+        return lookup(id) != null;
+    }
+
+    /**
+     * removes the patient with the given id
+     * @param id the patient id
+     * @return the removed patient, or null if there was none
+     */
+    public Patient remove(Comparable id) {
+        Comparable key = (id == null) ? null : idPolicy.apply(id);
+        Patient patient = (key == null) ? null : patients.remove(key);
+        if (patient != null) {
+            for (Listener listener : listeners) {
+                listener.patientRemoved(patient);
+            }
+        }
+        return patient;
+    }
+
+    /**
+     * applies an update to the patient with the given id while holding the stripe
+     * lock of that patient. updates to the same patient are therefore never concurrent
+     * @param id the patient id
+     * @param update the update to apply
+     * @return true if the patient was found and updated
+     */
+    public boolean update(Comparable id, Consumer<Patient> update) {
+        Patient patient = lookup(id);
+        if (patient == null) {
+            return false;
+        }
+        synchronized (stripeFor(patient)) {
+            update.accept(patient);
+        }
+        fireUpdated(patient);
+        return true;
+    }
+
+    /**
+     * reads from the patient with the given id while holding the stripe lock of that
+     * patient, so that the reader sees a consistent state
+     * @param <T> the type of the result
+     * @param id the patient id
+     * @param reader the function reading from the patient
+     * @return the result of the reader, or null if the patient was not found
+     */
+    public <T> T read(Comparable id, Function<Patient, T> reader) {
+        Patient patient = lookup(id);
+        if (patient == null) {
+            return null;
+        }
+        synchronized (stripeFor(patient)) {
+            return reader.apply(patient);
+        }
+    }
+
+    /**
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Null 'listener' argument.");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireUpdated(Patient patient) {
+        for (Listener listener : listeners) {
+            listener.patientUpdated(patient);
+        }
+    }
+
+    /**
+     * @param patient a registered patient
+     * @return the lock which guards updates to the patient
+     */
+    protected Object stripeFor(Patient patient) {
+        int h = patient.getPatientid().hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    /**
+     * registers all patients listed in a text file. each line holds one patient id,
+     * optionally followed by further comma separated fields which are ignored.
+     * empty lines and lines starting with '#' are skipped, as are ids which are
+     * already registered
+     * @param file the file to read
+     * @return the number of patients registered
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file contains an invalid id
+     */
+    public int loadFromFile(Path file) throws IOException {
+
+        int loaded = 0;
+        int lineNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comma = line.indexOf(',');
+                String id = ((comma < 0) ? line : line.substring(0, comma)).trim();
+                if (id.isEmpty() || id.charAt(0) == '#') {
+                    continue;
+                }
+                Comparable key = idPolicy.apply(id);
+                if (key == null) {
+                    throw new IllegalArgumentException("Invalid patient id at line " + lineNumber + ": " + id);
+                }
+                Patient patient = new Patient(key);
+                if (patients.putIfAbsent(key, patient) == null) {
+                    fireUpdated(patient);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the number of registered patients
+     */
+    public int size() {
+        return patients.size();
+    }
+
+    /**
+     * @return an unmodifiable live view of the registered patients
+     */
+    public Collection<Patient> getPatients() {
+        return Collections.unmodifiableCollection(patients.values());
+    }
+}
@@ -0,0 +1,236 @@
+
+package patient;
+
+import java.time.Duration;
+
+/**
+ * aggregates of the measurements within a sliding time window which ends at the
+ * latest measurement: count, mean, minimum, maximum and the slope of the least
+ * squares trend line. measurements must be added in time order; each addition
+ * updates all aggregates in amortised O(1), and each query is O(1).
+ * the statistics are not thread safe
+ * @since 1.0
+ */
+public class RollingStatistics {
+
+    /** milliseconds per day, the time unit of the slope */
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    /** the length of the window in milliseconds */
+    private final long window;
+
+    /** the measurements in the window */
+    private final Ring points = new Ring();
+
+    /** the measurements which may still become the minimum, values increasing */
+    private final Ring minimums = new Ring();
+
+    /** the measurements which may still become the maximum, values decreasing */
+    private final Ring maximums = new Ring();
+
+    /** the time origin of the trend line, to keep the sums small */
+    private long origin;
+
+    /** the time of the latest measurement, Long.MIN_VALUE if there is none */
+    private long last = Long.MIN_VALUE;
+
+    /** the running sums of the values, the times in days, and their products */
+    private double sumY, sumX, sumXX, sumXY;
+
+
+    /**
+     * creates statistics over the given window
+     * @param window the length of the window
+     */
+    public RollingStatistics(Duration window) {
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("The window must be positive.");
+        }
+        this.window = window.toMillis();
+    }
+
+
+    /**
+     * adds a measurement and removes the measurements which fall out of the window
+     * @param millis the time point in milliseconds since the epoch; not before the
+     * latest measurement
+     * @param value the measured value
+     */
+    public void add(long millis, double value) {
+
+        if (millis < last) {
+            throw new IllegalArgumentException("Measurements must be added in time order.");
+        }
+        if (points.size == 0) {
+            origin = millis;
+        }
+        last = millis;
+
+        double x = (millis - origin) / MILLIS_PER_DAY;
+        points.addLast(millis, value);
+        sumY += value;
+        sumX += x;
+        sumXX += x * x;
+        sumXY += x * value;
+
+        while (minimums.size > 0 && minimums.lastValue() >= value) {
+            minimums.removeLast();
+        }
+        minimums.addLast(millis, value);
+
+        while (maximums.size > 0 && maximums.lastValue() <= value) {
+            maximums.removeLast();
+        }
+        maximums.addLast(millis, value);
+
+        // the window is (millis - window, millis]
+        long cutoff = millis - window;
+        while (points.firstTime() <= cutoff) {
+            double y = points.firstValue();
+            double xo = (points.firstTime() - origin) / MILLIS_PER_DAY;
+            sumY -= y;
+            sumX -= xo;
+            sumXX -= xo * xo;
+            sumXY -= xo * y;
+            points.removeFirst();
+        }
+        while (minimums.firstTime() <= cutoff) {
+            minimums.removeFirst();
+        }
+        while (maximums.firstTime() <= cutoff) {
+            maximums.removeFirst();
+        }
+
+        if (points.size == 1) {
+            // restart the sums whenever the window holds a single point, so that
+            // rounding errors from removals do not accumulate
+            origin = millis;
+            sumY = value;
+            sumX = 0;
+            sumXX = 0;
+            sumXY = 0;
+        }
+    }
+
+    /**
+     * removes all measurements
+     */
+    public void clear() {
+        points.clear();
+        minimums.clear();
+        maximums.clear();
+        last = Long.MIN_VALUE;
+        sumY = sumX = sumXX = sumXY = 0;
+    }
+
+    /**
+     * @return the length of the window
+     */
+    public Duration getWindow() {
+        return Duration.ofMillis(window);
+    }
+
+    /**
+     * @return the time of the latest measurement, or Long.MIN_VALUE if there is none
+     */
+    public long getLastTime() {
+        return last;
+    }
+
+    /**
+     * @return the number of measurements in the window
+     */
+    public int getCount() {
+        return points.size;
+    }
+
+    /**
+     * @return the mean of the measurements in the window, NaN if there are none
+     */
+    public double getMean() {
+        return (points.size == 0) ? Double.NaN : sumY / points.size;
+    }
+
+    /**
+     * @return the minimum of the measurements in the window, NaN if there are none
+     */
+    public double getMin() {
+        return (minimums.size == 0) ? Double.NaN : minimums.firstValue();
+    }
+
+    /**
+     * @return the maximum of the measurements in the window, NaN if there are none
+     */
+    public double getMax() {
+        return (maximums.size == 0) ? Double.NaN : maximums.firstValue();
+    }
+
+    /**
+     * @return the slope of the least squares trend line in value units per day,
+     * NaN if the window holds fewer than two distinct time points
+     */
+    public double getSlope() {
+        int n = points.size;
+        double sxx = n * sumXX - sumX * sumX;
+        if (n < 2 || sxx <= 1e-12 * n * sumXX) {
+            return Double.NaN;
+        }
+        return (n * sumXY - sumX * sumY) / sxx;
+    }
+
+
+    /**
+     * a growable ring buffer of measurements
+     */
+    private static final class Ring {
+
+        private long[] times = new long[8];
+        private double[] values = new double[8];
+        private int head;
+        private int size;
+
+        void addLast(long millis, double value) {
+            if (size == times.length) {
+                long[] t = new long[size << 1];
+                double[] v = new double[size << 1];
+                for (int i = 0; i < size; i++) {
+                    t[i] = times[(head + i) & (times.length - 1)];
+                    v[i] = values[(head + i) & (times.length - 1)];
+                }
+                times = t;
+                values = v;
+                head = 0;
+            }
+            int tail = (head + size) & (times.length - 1);
+            times[tail] = millis;
+            values[tail] = value;
+            size++;
+        }
+
+        long firstTime() {
+            return (size == 0) ? Long.MAX_VALUE : times[head];
+        }
+
+        double firstValue() {
+            return values[head];
+        }
+
+        double lastValue() {
+            return values[(head + size - 1) & (times.length - 1)];
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (times.length - 1);
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * a durable append-only log of measurement and infusion events.
+ * <p>
+ * every event is one record: <code>[int length][int crc][byte type][short id length]
+ * [id bytes][long millis][double value]</code>, where the CRC32 covers everything after
+ * the crc field. appended records are buffered and written by a background thread
+ * which forces them to disk together (group commit), so that many writers share one
+ * fsync. {@link #awaitDurable(long)} blocks until a record has been forced.
+ * <p>
+ * the log is a directory holding log files of numbered generations and at most one
+ * snapshot. a snapshot of generation n holds the state of all log files before n.
+ * {@link #compact(SnapshotWriter)} starts a new log generation, writes the snapshot
+ * and removes the older files. on opening, the latest snapshot and all later log files
+ * are replayed; a torn or corrupt record at the end of the last log file (e.g. from a
+ * crash during a write) is cut off
+ * @since 1.0
+ */
+public class EventLog implements Closeable {
+
+    /** a weight measurement in kg of a patient */
+    public static final byte WEIGHT = 1;
+
+    /** a height measurement in metres of a patient */
+    public static final byte HEIGHT = 2;
+
+    /** an infusion rate in mU/min of an infusion series */
+    public static final byte INFUSION = 3;
+
+    private static final String LOG_PREFIX = "events-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SUFFIX = ".log";
+
+    /** the size of the record header: length and crc */
+    private static final int HEADER = 8;
+
+    /** the size of the fixed part of a record body: type, id length, millis, value */
+    private static final int FIXED_BODY = 1 + 2 + 8 + 8;
+
+    /**
+     * receives replayed events
+     */
+    public interface Handler {
+
+        /**
+         * @param type the event type, {@link #WEIGHT}, {@link #HEIGHT} or {@link #INFUSION}
+         * @param id the patient id or the key of the infusion series
+         * @param millis the time point in milliseconds since the epoch
+         * @param value the measured value or infusion rate
+         */
+        void onEvent(byte type, String id, long millis, double value);
+    }
+
+    /**
+     * writes the current state as events into a snapshot
+     */
+    public interface SnapshotWriter {
+
+        /**
+         * @param snapshot the handler to pass the events of the current state to
+         * @throws IOException if the snapshot cannot be written
+         */
+        void write(Handler snapshot) throws IOException;
+    }
+
+    /** the directory of the log */
+    private final Path directory;
+
+    /** guards the pending buffer, the sequence numbers and the channel switch */
+    private final Object lock = new Object();
+
+    /** the records appended but not yet written */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+    /** the buffer being written by the flusher */
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+
+    /** the sequence number of the last appended record */
+    private long appended;
+
+    /** the sequence number of the last record forced to disk */
+    private long durable;
+
+    /** the failure of the flusher, rethrown to writers */
+    private IOException failure;
+
+    /** the current log generation and its channel */
+    private long generation;
+    private FileChannel channel;
+
+    private final CRC32 crc = new CRC32();
+
+    private final Thread flusher;
+
+    private volatile boolean closed;
+
+
+    private EventLog(Path directory, long generation, FileChannel channel) {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = channel;
+        this.flusher = new Thread(this::flushLoop, "event-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+
+    /**
+     * opens the log in the given directory, creating it if necessary, and replays
+     * the latest snapshot and all later log files to the handler
+     * @param directory the directory of the log
+     * @param handler the handler receiving the replayed events; may be null
+     * @return the opened log, ready for appending
+     * @throws IOException if the log cannot be read or opened
+     */
+    public static EventLog open(Path directory, Handler handler) throws IOException {
+
+        Files.createDirectories(directory);
+
+        long snapshot = -1;
+        List<Long> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    snapshot = Math.max(snapshot, generationOf(name, SNAPSHOT_PREFIX));
+                } else if (name.startsWith(LOG_PREFIX)) {
+                    logs.add(generationOf(name, LOG_PREFIX));
+                }
+            }
+        }
+        Collections.sort(logs);
+
+        if (snapshot >= 0) {
+            long end = replay(directory.resolve(SNAPSHOT_PREFIX + snapshot + SUFFIX), handler);
+            if (end < Files.size(directory.resolve(SNAPSHOT_PREFIX + snapshot + SUFFIX))) {
+                throw new IOException("Corrupt snapshot of generation " + snapshot + " at offset " + end);
+            }
+        }
+
+        long generation = Math.max(snapshot, 0);
+        for (int i = 0; i < logs.size(); i++) {
+            long g = logs.get(i);
+            if (g < snapshot) {
+                // left over from a compaction which was interrupted before cleaning up
+                Files.deleteIfExists(logFile(directory, g));
+                continue;
+            }
+            Path file = logFile(directory, g);
+            long end = replay(file, handler);
+            if (end < Files.size(file)) {
+                if (i < logs.size() - 1) {
+                    throw new IOException("Corrupt record in " + file + " at offset " + end);
+                }
+                // cut off a torn write at the end of the last log file
+                try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    c.truncate(end);
+                    c.force(true);
+                }
+            }
+            generation = g;
+        }
+
+        FileChannel channel = FileChannel.open(logFile(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new EventLog(directory, generation, channel);
+    }
+
+    /**
+     * appends an event. the event is durable once {@link #awaitDurable(long)} returns
+     * for the returned sequence number
+     * @param type the event type
+     * @param id the patient id or the key of the infusion series
+     * @param millis the time point in milliseconds since the epoch
+     * @param value the measured value or infusion rate
+     * @return the sequence number of the event
+     * @throws IOException if the log is closed or writing has failed
+     */
+    public long append(byte type, String id, long millis, double value) throws IOException {
+
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Id is too long.");
+        }
+
+        synchronized (lock) {
+            checkOpen();
+            int size = HEADER + FIXED_BODY + idBytes.length;
+            if (pending.remaining() < size) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + size));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            encode(pending, type, idBytes, millis, value);
+            appended++;
+            lock.notifyAll();
+            return appended;
+        }
+    }
+
+    /**
+     * appends an event and waits until it is durable
+     * @param type the event type
+     * @param id the patient id or the key of the infusion series
+     * @param millis the time point in milliseconds since the epoch
+     * @param value the measured value or infusion rate
+     * @throws IOException if the log is closed or writing has failed
+     */
+    public void appendDurably(byte type, String id, long millis, double value) throws IOException {
+        awaitDurable(append(type, id, millis, value));
+    }
+
+    /**
+     * waits until the event with the given sequence number, and all before it,
+     * have been forced to disk
+     * @param sequence the sequence number returned by append
+     * @throws IOException if writing has failed or the wait is interrupted
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            while (durable < sequence) {
+                if (failure != null) {
+                    throw new IOException("Writing the event log failed.", failure);
+                }
+                if (closed) {
+                    throw new IOException("Event log is closed.");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the event log.");
+                }
+            }
+        }
+    }
+
+    /**
+     * compacts the log: starts a new log generation, writes a snapshot of the current
+     * state and removes the older log files and snapshot. the caller must make sure that
+     * the state passed to the snapshot writer contains exactly the events appended
+     * before this call, e.g. by not appending while compacting
+     * @param writer writes the current state as events into the snapshot
+     * @throws IOException if the snapshot cannot be written; the log stays usable
+     */
+    public void compact(SnapshotWriter writer) throws IOException {
+
+        long previous;
+        synchronized (lock) {
+            checkOpen();
+            // let the flusher write everything of the current generation, then switch
+            while (durable < appended && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while compacting the event log.");
+                }
+            }
+            checkOpen();
+            previous = generation;
+            FileChannel next = FileChannel.open(logFile(directory, previous + 1),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.close();
+            channel = next;
+            generation = previous + 1;
+        }
+
+        Path temp = directory.resolve(SNAPSHOT_PREFIX + (previous + 1) + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            final CRC32 snapshotCrc = new CRC32();
+            try {
+                writer.write((type, id, millis, value) -> {
+                    byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+                    try {
+                        if (buffer.remaining() < HEADER + FIXED_BODY + idBytes.length) {
+                            drain(out, buffer);
+                        }
+                        encode(buffer, snapshotCrc, type, idBytes, millis, value);
+                    } catch (IOException e) {
+                        // stops the snapshot writer at the first failure
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            drain(out, buffer);
+            out.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_PREFIX + (previous + 1) + SUFFIX),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // the snapshot now covers all older generations
+        for (long g = 0; g <= previous; g++) {
+            Files.deleteIfExists(logFile(directory, g));
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_PREFIX + g + SUFFIX));
+        }
+    }
+
+    /**
+     * writes the pending events, waits until they are durable and closes the log
+     * @throws IOException if writing has failed
+     */
+    @Override
+    public void close() throws IOException {
+        long last;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            last = appended;
+        }
+        try {
+            awaitDurable(last);
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the current log generation
+     */
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * writes the pending records and forces them to disk, one batch at a time
+     */
+    private void flushLoop() {
+        while (true) {
+            long batchEnd;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // only closing stops the flusher
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer swap = writing;
+                writing = pending;
+                pending = swap;
+                pending.clear();
+                batchEnd = appended;
+                target = channel;
+            }
+
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    target.write(writing);
+                }
+                target.force(false);
+                writing.clear();
+                synchronized (lock) {
+                    durable = batchEnd;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    closed = true;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Writing the event log failed.", failure);
+        }
+        if (closed) {
+            throw new IOException("Event log is closed.");
+        }
+    }
+
+    private void encode(ByteBuffer buffer, byte type, byte[] id, long millis, double value) {
+        encode(buffer, crc, type, id, millis, value);
+    }
+
+    private static void encode(ByteBuffer buffer, CRC32 crc, byte type, byte[] id, long millis, double value) {
+        int start = buffer.position();
+        buffer.putInt(FIXED_BODY + id.length);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        buffer.putLong(millis);
+        buffer.putDouble(value);
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + HEADER, FIXED_BODY + id.length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * replays the valid records of a file
+     * @return the offset after the last valid record
+     */
+    private static long replay(Path file, Handler handler) throws IOException {
+
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        long offset = 0;
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (true) {
+                if (!eof && in.read(buffer) < 0) {
+                    eof = true;
+                }
+                buffer.flip();
+
+                while (buffer.remaining() >= HEADER) {
+                    int start = buffer.position();
+                    int length = buffer.getInt(start);
+                    if (length < FIXED_BODY || length > FIXED_BODY + 0xFFFF) {
+                        return offset;
+                    }
+                    if (buffer.remaining() < HEADER + length) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(buffer.array(), buffer.arrayOffset() + start + HEADER, length);
+                    if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+                        return offset;
+                    }
+                    buffer.position(start + HEADER);
+                    byte type = buffer.get();
+                    int idLength = buffer.getShort() & 0xFFFF;
+                    if (idLength != length - FIXED_BODY) {
+                        return offset;
+                    }
+                    String id = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), idLength, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + idLength);
+                    long millis = buffer.getLong();
+                    double value = buffer.getDouble();
+                    if (handler != null) {
+                        handler.onEvent(type, id, millis, value);
+                    }
+                    offset += HEADER + length;
+                }
+
+                if (eof) {
+                    return offset;
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // a single record is larger than the buffer
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() << 1);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+        }
+    }
+
+    private static Path logFile(Path directory, long generation) {
+        return directory.resolve(LOG_PREFIX + generation + SUFFIX);
+    }
+
+    private static long generationOf(String name, String prefix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file in event log directory: " + name, e);
+        }
+    }
+}
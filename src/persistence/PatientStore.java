@@ -0,0 +1,313 @@
+
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.Second;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+import patient.MeasurementSeries;
+import patient.Patient;
+import patient.PatientRegistry;
+
+/**
+ * keeps the patients of a registry and a set of infusion series durable in an
+ * {@link EventLog}. every change is first appended to the log and then applied,
+ * so that the state can be restored by replaying the log on startup.
+ * {@link #compact()} replaces the log by a snapshot of the current state; the log is
+ * also compacted in the background after a number of recorded changes, see
+ * {@link #setCompactionThreshold(long)}.
+ * <p>
+ * patient ids are logged as text, so the registry must use
+ * {@link PatientRegistry#CPR_IDS}, whose normalised ids are strings
+ * @since 1.0
+ */
+public class PatientStore implements Closeable {
+
+    /** the registry of the patients */
+    private final PatientRegistry registry;
+
+    /** the infusion series in mU/min by key */
+    private final Map<String, TimeSeries> infusions = new ConcurrentHashMap<>();
+
+    /** the time zone of the infusion series */
+    private final TimeZone zone;
+
+    /** the log */
+    private final EventLog log;
+
+    /** changes share the read lock, compaction takes the write lock */
+    private final ReadWriteLock compaction = new ReentrantReadWriteLock();
+
+    /** the default number of recorded changes after which the log is compacted */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 100000;
+
+    /** the number of recorded changes after which the log is compacted, 0 for never */
+    private volatile long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** the number of changes recorded since the last compaction or opening */
+    private final AtomicLong recordedSinceCompaction = new AtomicLong();
+
+    /** true while a background compaction is queued or running */
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /** the failure of the last background compaction, null if it succeeded */
+    private volatile IOException compactionFailure;
+
+    /** runs the background compactions */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "patient-store-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * opens the store in the given directory and restores the registry and the
+     * infusion series from it
+     * @param directory the directory of the event log
+     * @param registry the registry to restore the patients into, with
+     * {@link PatientRegistry#CPR_IDS}
+     * @param zone the time zone for the infusion series
+     * @throws IOException if the log cannot be read or opened
+     */
+    public PatientStore(Path directory, PatientRegistry registry, TimeZone zone) throws IOException {
+        if (registry == null) {
+            throw new IllegalArgumentException("Null 'registry' argument.");
+        }
+        if (registry.getIdPolicy() != PatientRegistry.CPR_IDS) {
+            // other policies may keep ids which do not survive being logged as text
+            throw new IllegalArgumentException("The registry must use CPR numbers as ids.");
+        }
+        this.registry = registry;
+        this.zone = zone;
+        this.log = EventLog.open(directory, this::apply);
+    }
+
+
+    /**
+     * records a weight measurement durably and adds it to the patient
+     * @param patientId the patient id
+     * @param instant the time point of the measurement
+     * @param weight the weight in kg
+     * @throws IOException if the event cannot be logged
+     */
+    public void recordWeight(Comparable patientId, Instant instant, double weight) throws IOException {
+        record(EventLog.WEIGHT, registry.normalizeId(patientId).toString(), instant.toEpochMilli(), weight);
+    }
+
+    /**
+     * records a height measurement durably and adds it to the patient
+     * @param patientId the patient id
+     * @param instant the time point of the measurement
+     * @param height the height in metres
+     * @throws IOException if the event cannot be logged
+     */
+    public void recordHeight(Comparable patientId, Instant instant, double height) throws IOException {
+        record(EventLog.HEIGHT, registry.normalizeId(patientId).toString(), instant.toEpochMilli(), height);
+    }
+
+    /**
+     * records an infusion rate durably and adds it to the infusion series
+     * @param key the key of the infusion series
+     * @param instant the time point from which the rate applies
+     * @param rate the infusion rate in mU/min
+     * @throws IOException if the event cannot be logged
+     */
+    public void recordInfusion(String key, Instant instant, double rate) throws IOException {
+        record(EventLog.INFUSION, key, instant.toEpochMilli(), rate);
+    }
+
+    /**
+     * @param key the key of the infusion series
+     * @return the infusion series with this key, e.g. to set as the infusion of a
+     * model; null if nothing has been recorded for the key
+     */
+    public TimeSeries getInfusion(String key) {
+        return infusions.get(key);
+    }
+
+    /**
+     * replaces the event log by a snapshot of the current state. changes wait
+     * until the compaction has finished
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void compact() throws IOException {
+        compaction.writeLock().lock();
+        try {
+            log.compact(this::writeSnapshot);
+            recordedSinceCompaction.set(0);
+        } finally {
+            compaction.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the registry of the patients
+     */
+    public PatientRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the number of recorded changes after which the log is compacted in
+     * the background, 0 for never
+     */
+    public long getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold the number of recorded changes after which the log
+     * is compacted in the background, 0 for never
+     */
+    public void setCompactionThreshold(long compactionThreshold) {
+        if (compactionThreshold < 0) {
+            throw new IllegalArgumentException("The compaction threshold must not be negative.");
+        }
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * @return the failure of the last background compaction, null if it succeeded or
+     * none has run; a failed compaction leaves the log usable and is tried again after
+     * the next threshold of changes
+     */
+    public IOException getCompactionFailure() {
+        return compactionFailure;
+    }
+
+    /**
+     * waits for a running background compaction and closes the log
+     * @throws IOException if the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    /**
+     * appends an event and applies it once it is durable. concurrent callers
+     * share the fsync of the log. if the log cannot be written or forced the event
+     * is not applied and the log is closed, so that the store must be opened again;
+     * the event may or may not be in the log when it is replayed, depending on
+     * whether it reached the disk before the failure
+     */
+    private void record(byte type, String id, long millis, double value) throws IOException {
+        compaction.readLock().lock();
+        try {
+            // the read lock is held until the event is applied, so that a compaction
+            // never snapshots a state which misses an event of the old generation
+            log.awaitDurable(log.append(type, id, millis, value));
+            apply(type, id, millis, value);
+        } finally {
+            compaction.readLock().unlock();
+        }
+
+        long threshold = compactionThreshold;
+        if (threshold > 0 && recordedSinceCompaction.incrementAndGet() >= threshold
+                && compacting.compareAndSet(false, true)) {
+            try {
+                compactor.execute(this::compactInBackground);
+            } catch (RejectedExecutionException e) {
+                // the store is closing
+                compacting.set(false);
+            }
+        }
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+            compactionFailure = null;
+        } catch (IOException e) {
+            compactionFailure = e;
+            recordedSinceCompaction.set(0);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * applies an event to the state; also used to replay the log
+     */
+    private void apply(byte type, String id, long millis, double value) {
+        switch (type) {
+            case EventLog.WEIGHT:
+                registry.getOrRegister(id);
+                registry.update(id, p -> p.addWeightMeasurementAtDate(value, Instant.ofEpochMilli(millis)));
+                break;
+            case EventLog.HEIGHT:
+                registry.getOrRegister(id);
+                registry.update(id, p -> p.addHeightMeasurementAtDate(value, Instant.ofEpochMilli(millis)));
+                break;
+            case EventLog.INFUSION:
+                TimeSeries series = infusions.computeIfAbsent(id, TimeSeries::new);
+                synchronized (series) {
+                    series.addOrUpdate(RegularTimePeriod.createInstance(Second.class, new Date(millis), zone), value);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type " + type);
+        }
+    }
+
+    /**
+     * writes the current state as events; heights go first so that the BMI values
+     * are derived only once when the snapshot is replayed
+     */
+    private void writeSnapshot(EventLog.Handler snapshot) {
+
+        List<Patient> patients = new ArrayList<>(registry.getPatients());
+        for (Patient patient : patients) {
+            final String id = patient.getPatientid().toString();
+            registry.read(id, p -> {
+                emit(snapshot, EventLog.HEIGHT, id, p.getHeightMeasurements());
+                emit(snapshot, EventLog.WEIGHT, id, p.getWeightMeasurements());
+                return null;
+            });
+        }
+
+        for (Map.Entry<String, TimeSeries> entry : infusions.entrySet()) {
+            TimeSeries series = entry.getValue();
+            synchronized (series) {
+                for (int i = 0; i < series.getItemCount(); i++) {
+                    TimeSeriesDataItem item = series.getDataItem(i);
+                    if (item.getValue() != null) {
+                        snapshot.onEvent(EventLog.INFUSION, entry.getKey(),
+                                item.getPeriod().getFirstMillisecond(), item.getValue().doubleValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void emit(EventLog.Handler snapshot, byte type, String id, MeasurementSeries series) {
+        for (int i = 0; i < series.size(); i++) {
+            snapshot.onEvent(type, id, series.getTime(i), series.getValue(i));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * -----------------
+ * EvaluationBatcher.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.BatchEvaluator;
+import model.TwoCompartmentInsulin;
+
+/**
+ * collects concurrent evaluation requests into batches evaluated together on a
+ * {@link BatchEvaluator}. a single dispatcher thread takes all requests waiting
+ * in the queue, up to the maximum batch size, and evaluates them as the members
+ * of one batch; requests arriving meanwhile form the next batch, so batches grow
+ * with the load without delaying requests when the service is idle.
+ * <p>
+ * the queue is bounded: when it is full, requests are rejected instead of
+ * waiting. the sizes of the batches and the latency of the requests are recorded
+ * in <code>service.batchSize</code> and <code>service.latency</code> (ns)
+ * @since 1.0
+ */
+final class EvaluationBatcher implements AutoCloseable {
+
+    private static final Counter REQUESTS = MetricsRegistry.getDefault().counter("service.requests");
+    private static final Counter REJECTED = MetricsRegistry.getDefault().counter("service.rejected");
+    private static final Histogram BATCH_SIZE = MetricsRegistry.getDefault().histogram("service.batchSize");
+    private static final Histogram LATENCY = MetricsRegistry.getDefault().histogram("service.latency");
+
+    /**
+     * a request waiting for its result
+     */
+    private static final class Job {
+
+        private final EvaluationRequest request;
+        private final CompletableFuture<EvaluationResult> result = new CompletableFuture<>();
+        private final long submitted = System.nanoTime();
+
+        private Job(EvaluationRequest request) {
+            this.request = request;
+        }
+    }
+
+    /** the names of the output series */
+    private final String[] names;
+
+    /** the evaluator of the batches */
+    private final BatchEvaluator evaluator;
+
+    /** the requests waiting to be evaluated */
+    private final BlockingQueue<Job> queue;
+
+    /** the maximum number of requests per batch */
+    private final int maxBatch;
+
+    /** the dispatcher thread */
+    private final Thread dispatcher;
+
+    private volatile boolean closed;
+
+
+    /**
+     * @param template the template model, whose parameters are used where a request gives none
+     * @param names the names of the output series of the model in the responses
+     * @param threads the number of threads evaluating a batch
+     * @param maxBatch the maximum number of requests per batch
+     * @param capacity the maximum number of waiting requests
+     */
+    EvaluationBatcher(TwoCompartmentInsulin template, String[] names, int threads, int maxBatch, int capacity) {
+        this.names = names;
+        this.evaluator = new BatchEvaluator(template, threads);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.dispatcher = new Thread(this::dispatch, "evaluation-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+
+    /**
+     * queues a request
+     * @param request the request
+     * @return the future result, or null if the queue is full
+     */
+    CompletableFuture<EvaluationResult> submit(EvaluationRequest request) {
+        if (closed) {
+            throw new IllegalStateException("The service is closed.");
+        }
+        Job job = new Job(request);
+        if (!queue.offer(job)) {
+            REJECTED.increment();
+            return null;
+        }
+        REQUESTS.increment();
+        return job.result;
+    }
+
+    private void dispatch() {
+        List<Job> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            BATCH_SIZE.record(batch.size());
+            try {
+                evaluator.evaluate(0, batch.size(),
+                        (member, model) -> batch.get(member).request.setup(model),
+                        (member, trajectory) -> {
+                            Job job = batch.get(member);
+                            job.result.complete(new EvaluationResult(names, trajectory));
+                            LATENCY.record(System.nanoTime() - job.submitted);
+                        });
+            } catch (RuntimeException | Error e) {
+                for (Job job : batch) {
+                    job.result.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+        for (Job job : batch) {
+            job.result.completeExceptionally(new IllegalStateException("The service is closed."));
+        }
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.result.completeExceptionally(new IllegalStateException("The service is closed."));
+        }
+    }
+
+    /**
+     * stops the dispatcher; waiting requests fail
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        evaluator.close();
+    }
+}
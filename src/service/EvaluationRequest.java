@@ -0,0 +1,185 @@
+/*
+ * -----------------
+ * EvaluationRequest.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Set the time period in milliseconds;
+ * 19-Oct-2026 : At most 100000 time points;
+ *
+ */
+package service;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import model.InputSeries;
+import model.InsulinParameter;
+import model.TwoCompartmentInsulin;
+
+/**
+ * a request to evaluate a {@link TwoCompartmentInsulin} model, parsed from JSON:
+ * <pre>
+ * {
+ *   "parameters": {"k3": 0.0012, "vp": 4.1, ...},
+ *   "start": 0,
+ *   "duration": 3600,
+ *   "step": 15,
+ *   "infusion": [[0, 6], [120, 10]],
+ *   "boluses": [[1800, 100]]
+ * }
+ * </pre>
+ * parameters are named as {@link InsulinParameter} in lower case, in the units of
+ * the model; parameters not given are taken from the template model of the service.
+ * the start is in milliseconds since the epoch; the duration and step, and the times
+ * of the infusion rates (mU/min) and boluses (mU), are in seconds from the start.
+ * all members are optional
+ * @since 1.0
+ */
+final class EvaluationRequest {
+
+    /** the maximum number of time points of an evaluation */
+    static final int MAX_POINTS = 100_000;
+
+    /** the parameter values, NaN where the template value is used */
+    private final double[] parameters = new double[InsulinParameter.values().length];
+
+    private long start;
+    private int duration = 3600;
+    private int step = 15;
+    private InputSeries infusion;
+    private long[] bolusTimes = new long[0];
+    private double[] bolusAmounts = new double[0];
+
+
+    private EvaluationRequest() {
+        Arrays.fill(parameters, Double.NaN);
+    }
+
+
+    /**
+     * @param json the parsed JSON request
+     * @param infusionKey the key of the infusion input of the model
+     * @return the request
+     * @throws IllegalArgumentException if the request is not valid
+     */
+    static EvaluationRequest fromJson(Object json, Comparable infusionKey) {
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException("The request must be a JSON object.");
+        }
+        EvaluationRequest request = new EvaluationRequest();
+        double[][] rates = new double[0][];
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+            Object value = entry.getValue();
+            switch ((String) entry.getKey()) {
+                case "parameters":
+                    if (!(value instanceof Map)) {
+                        throw new IllegalArgumentException("The parameters must be a JSON object.");
+                    }
+                    for (Map.Entry<?, ?> p : ((Map<?, ?>) value).entrySet()) {
+                        InsulinParameter parameter;
+                        try {
+                            parameter = InsulinParameter.valueOf(((String) p.getKey()).toUpperCase(Locale.ROOT));
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Unknown parameter '" + p.getKey() + "'.");
+                        }
+                        request.parameters[parameter.ordinal()] = number(p.getValue(), (String) p.getKey());
+                    }
+                    break;
+                case "start":
+                    request.start = (long) number(value, "start");
+                    break;
+                case "duration":
+                    request.duration = (int) number(value, "duration");
+                    break;
+                case "step":
+                    request.step = (int) number(value, "step");
+                    break;
+                case "infusion":
+                    rates = pairs(value, "infusion");
+                    break;
+                case "boluses":
+                    double[][] boluses = pairs(value, "boluses");
+                    request.bolusTimes = new long[boluses.length];
+                    request.bolusAmounts = new double[boluses.length];
+                    for (int i = 0; i < boluses.length; i++) {
+                        request.bolusTimes[i] = Math.round(boluses[i][0] * 1000);
+                        request.bolusAmounts[i] = boluses[i][1];
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown member '" + entry.getKey() + "'.");
+            }
+        }
+        if (request.step < 1 || request.duration < request.step) {
+            throw new IllegalArgumentException("The step must be positive and not longer than the duration.");
+        }
+        if (request.duration / request.step >= MAX_POINTS) {
+            throw new IllegalArgumentException("At most " + MAX_POINTS + " time points can be evaluated.");
+        }
+        // the times of the infusion are relative to the start
+        long[] times = new long[rates.length];
+        double[] values = new double[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            times[i] = request.start + Math.round(rates[i][0] * 1000);
+            values[i] = rates[i][1];
+        }
+        request.infusion = new InputSeries(infusionKey, times, values);
+        return request;
+    }
+
+    /**
+     * sets up a model for this request; the parameters not given in the request
+     * must already have the values of the template
+     * @param model the model
+     */
+    void setup(TwoCompartmentInsulin model) {
+        for (InsulinParameter parameter : InsulinParameter.values()) {
+            double value = parameters[parameter.ordinal()];
+            if (!Double.isNaN(value)) {
+                parameter.set(model, value);
+            }
+        }
+        model.setDeltat(step);
+        model.setTimeperiod(start, start + duration * 1000L);
+        model.setRxiSchedule(infusion);
+        model.clearEvents();
+        for (int i = 0; i < bolusTimes.length; i++) {
+            model.addBolus(Instant.ofEpochMilli(start + bolusTimes[i]), bolusAmounts[i]);
+        }
+    }
+
+    private static double number(Object value, String name) {
+        if (!(value instanceof Double) || Double.isNaN((Double) value)) {
+            throw new IllegalArgumentException("'" + name + "' must be a number.");
+        }
+        return (Double) value;
+    }
+
+    /**
+     * @return the pairs of numbers in an array of two-element arrays
+     */
+    private static double[][] pairs(Object value, String name) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("'" + name + "' must be an array of [time, value] pairs.");
+        }
+        List<?> list = (List<?>) value;
+        double[][] pairs = new double[list.size()][];
+        for (int i = 0; i < pairs.length; i++) {
+            Object pair = list.get(i);
+            if (!(pair instanceof List) || ((List<?>) pair).size() != 2) {
+                throw new IllegalArgumentException("'" + name + "' must be an array of [time, value] pairs.");
+            }
+            pairs[i] = new double[] {number(((List<?>) pair).get(0), name), number(((List<?>) pair).get(1), name)};
+        }
+        return pairs;
+    }
+}
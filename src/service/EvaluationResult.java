@@ -0,0 +1,119 @@
+/*
+ * -----------------
+ * EvaluationResult.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ *
+ */
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import model.Trajectory;
+
+/**
+ * the output series of one evaluation of the simulation service, copied from the
+ * {@link Trajectory} of the evaluation, with its JSON and binary encodings
+ * @since 1.0
+ */
+final class EvaluationResult {
+
+    /** the names of the output series in the responses */
+    private final String[] names;
+
+    /** the time points in milliseconds since the epoch */
+    private final long[] times;
+
+    /** the values per series and time point */
+    private final double[][] values;
+
+
+    /**
+     * copies the series of a trajectory
+     * @param names the names of the series, in the order of the trajectory
+     * @param trajectory the trajectory
+     */
+    EvaluationResult(String[] names, Trajectory trajectory) {
+        int points = trajectory.size();
+        this.names = names;
+        this.times = new long[points];
+        System.arraycopy(trajectory.getTimes(), 0, times, 0, points);
+        this.values = new double[names.length][points];
+        for (int s = 0; s < names.length; s++) {
+            System.arraycopy(trajectory.getValues(s), 0, values[s], 0, points);
+        }
+    }
+
+
+    /**
+     * encodes the result as a JSON object with the array <code>times</code> and
+     * one array per output series
+     * @return the UTF-8 bytes of the JSON text
+     */
+    byte[] toJson() {
+        StringBuilder sb = new StringBuilder(32 * times.length * (names.length + 1));
+        sb.append("{\"times\":[");
+        for (int i = 0; i < times.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(times[i]);
+        }
+        sb.append(']');
+        for (int s = 0; s < names.length; s++) {
+            sb.append(',');
+            Json.appendString(sb, names[s]);
+            sb.append(":[");
+            for (int i = 0; i < times.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                Json.appendNumber(sb, values[s][i]);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * encodes the result in big-endian binary: the number of time points and of
+     * series as ints, the time points as longs, then the values of each series as
+     * doubles, in the order of the names
+     * @return the bytes
+     */
+    byte[] toBinary() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 8 * times.length * (names.length + 1));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(times.length);
+            out.writeInt(names.length);
+            for (long time : times) {
+                out.writeLong(time);
+            }
+            for (double[] series : values) {
+                for (double value : series) {
+                    out.writeDouble(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the number of time points
+     */
+    int size() {
+        return times.length;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * -----------------
+ * Json.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Limit the nesting depth;
+ *
+ */
+package service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a minimal JSON parser and writer for the simulation service, so that the
+ * service needs no libraries. objects are parsed to maps, arrays to lists,
+ * numbers to doubles, and true, false and null to booleans and null. values may
+ * be nested at most {@link #MAX_DEPTH} deep, so that a hostile request cannot
+ * exhaust the stack of the parser
+ * @since 1.0
+ */
+final class Json {
+
+    /** the deepest nesting of arrays and objects parsed */
+    static final int MAX_DEPTH = 64;
+
+    private final String text;
+    private int pos;
+
+    /** the number of arrays and objects the parser is in */
+    private int depth;
+
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+
+    /**
+     * @param text the JSON text
+     * @return the parsed value
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected text after the value");
+        }
+        return value;
+    }
+
+    private Object value() {
+        skipWhitespace();
+        if (pos >= text.length()) {
+            throw error("Unexpected end of text");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{':
+            case '[':
+                if (++depth > MAX_DEPTH) {
+                    throw error("Nested deeper than " + MAX_DEPTH + " levels");
+                }
+                Object nested = (c == '{') ? object() : array();
+                depth--;
+                return nested;
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default: return number();
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a string key");
+            }
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            map.put(key, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return map;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            list.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return list;
+            }
+        }
+    }
+
+    private String string() {
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char e = text.charAt(pos++);
+            switch (e) {
+                case '"': case '\\': case '/': sb.append(e); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape");
+            }
+        }
+    }
+
+    private Double number() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Unexpected character '" + text.charAt(pos) + "'");
+        }
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number");
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) {
+            throw error("Unexpected character '" + text.charAt(pos) + "'");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private char peek() {
+        return (pos < text.length()) ? text.charAt(pos) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + ".");
+    }
+
+    /**
+     * appends a string as a JSON string
+     * @param out where to append to
+     * @param s the string
+     */
+    static void appendString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * appends a number; values which are not finite are written as null
+     * @param out where to append to
+     * @param value the number
+     */
+    static void appendNumber(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * -----------------
+ * SimulationServer.java
+ * -----------------
+ * (C) Copyright 2017, by MMDS, Aalborg University and Contributors.
+ *
+ * Original Author:  MMDS (for Aalborg University);
+ * Contributor(s):   -;
+ *
+ * Changes:
+ * --------
+ * 19-Oct-2026 : Version 1;
+ * 19-Oct-2026 : Read the infusion key from the schedule;
+ * 19-Oct-2026 : Bind to the loopback interface by default, limit the request size;
+ * 19-Oct-2026 : Respond when the result is ready instead of waiting for it;
+ * 19-Oct-2026 : Take the default model from TwoCompartmentInsulin;
+ *
+ */
+package service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import metrics.MetricsRegistry;
+import metrics.TextExporter;
+import model.TwoCompartmentInsulin;
+
+/**
+ * a local HTTP service evaluating the {@link TwoCompartmentInsulin} model, on the
+ * HTTP server of the JDK so that it needs no libraries:
+ * <ul>
+ * <li><code>POST /evaluate</code> evaluates the model for an {@link EvaluationRequest}
+ * and responds with the time points and the series <code>cp</code>, <code>cq</code>
+ * and <code>rxi</code> as JSON, or as binary if the request accepts
+ * <code>application/octet-stream</code>; see {@link EvaluationResult}</li>
+ * <li><code>GET /metrics</code> responds with the metrics as text</li>
+ * <li><code>GET /health</code> responds with <code>ok</code></li>
+ * </ul>
+ * concurrent requests are evaluated together in batches by an {@link EvaluationBatcher};
+ * the handler threads parse and queue the requests, and encode the responses once
+ * the results are ready, so no thread waits for an evaluation and the queue of the
+ * batcher bounds the waiting requests. when it is full, the service responds with 503, and to request bodies larger than
+ * {@link #MAX_BODY} bytes with 413.
+ * <p>
+ * the service is not authenticated, so by default it only listens on the loopback
+ * interface
+ * @since 1.0
+ */
+public class SimulationServer {
+
+    /** the default port */
+    public static final int DEFAULT_PORT = 8085;
+
+    /** the largest request body in bytes */
+    public static final int MAX_BODY = 1 << 20;
+
+    /** the names of the output series of the model in the responses */
+    private static final String[] NAMES = {"cp", "cq", "rxi"};
+
+    private static final String JSON = "application/json";
+    private static final String BINARY = "application/octet-stream";
+
+    /** the template model */
+    private final TwoCompartmentInsulin template;
+
+    /** the address to bind to */
+    private final InetSocketAddress address;
+
+    /** the number of handler threads */
+    private final int handlerThreads;
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private EvaluationBatcher batcher;
+
+
+    /**
+     * creates a server with the default model on the given port of the loopback interface
+     * @param port the port; 0 picks a free port
+     */
+    public SimulationServer(int port) {
+        this(TwoCompartmentInsulin.defaultModel(), new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param template the template model; requests change only the parameters they give
+     * @param address the address to bind to
+     * @param handlerThreads the number of threads handling connections
+     */
+    public SimulationServer(TwoCompartmentInsulin template, InetSocketAddress address, int handlerThreads) {
+        if (template == null) {
+            throw new IllegalArgumentException("Null 'template' argument.");
+        }
+        this.template = template;
+        this.address = address;
+        this.handlerThreads = handlerThreads;
+    }
+
+
+    /**
+     * starts the server
+     * @throws IOException if the server cannot bind to its address
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server is already started.");
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        batcher = new EvaluationBatcher(template, NAMES, processors, 256 * processors, 64 * handlerThreads);
+
+        final AtomicInteger count = new AtomicInteger();
+        handlers = Executors.newFixedThreadPool(handlerThreads, r -> {
+            Thread thread = new Thread(r, "simulation-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(address, 1024);
+        server.setExecutor(handlers);
+        server.createContext("/evaluate", this::evaluate);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder sb = new StringBuilder();
+            new TextExporter(sb).export(MetricsRegistry.getDefault());
+            respond(exchange, 200, "text/plain; charset=utf-8", sb.toString().getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/health", exchange ->
+                respond(exchange, 200, "text/plain; charset=utf-8", "ok".getBytes(StandardCharsets.UTF_8)));
+        server.start();
+    }
+
+    /**
+     * stops the server; requests being evaluated fail
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        batcher.close();
+        handlers.shutdown();
+        server = null;
+    }
+
+    /**
+     * @return the address the server is bound to, with the actual port
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return (server != null) ? server.getAddress() : address;
+    }
+
+    private void evaluate(HttpExchange exchange) throws IOException {
+        final ExecutorService responders = handlers;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                error(exchange, 405, "Use POST.");
+                return;
+            }
+            byte[] bytes = readAll(exchange.getRequestBody(), MAX_BODY);
+            if (bytes == null) {
+                error(exchange, 413, "The request is larger than " + MAX_BODY + " bytes.");
+                return;
+            }
+            EvaluationRequest request;
+            try {
+                String body = new String(bytes, StandardCharsets.UTF_8);
+                request = EvaluationRequest.fromJson(Json.parse(body), template.getRxiKey());
+            } catch (IllegalArgumentException e) {
+                error(exchange, 400, e.getMessage());
+                return;
+            }
+
+            CompletableFuture<EvaluationResult> future = batcher.submit(request);
+            if (future == null) {
+                error(exchange, 503, "Too many requests.");
+                return;
+            }
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            final boolean binary = accept != null && accept.contains(BINARY);
+            // the exchange stays open and is finished by a handler thread with the result
+            future.whenCompleteAsync((result, failure) -> finish(exchange, result, failure, binary), responders);
+        } catch (RuntimeException e) {
+            error(exchange, 500, String.valueOf(e));
+        }
+    }
+
+    /**
+     * responds with the result of an evaluation, or with 500 if it failed
+     */
+    private static void finish(HttpExchange exchange, EvaluationResult result, Throwable failure, boolean binary) {
+        try {
+            if (failure != null) {
+                Throwable cause = (failure instanceof CompletionException && failure.getCause() != null)
+                        ? failure.getCause() : failure;
+                error(exchange, 500, String.valueOf(cause));
+            } else if (binary) {
+                respond(exchange, 200, BINARY, result.toBinary());
+            } else {
+                respond(exchange, 200, JSON, result.toJson());
+            }
+        } catch (IOException | RuntimeException e) {
+            // the client is gone or the result cannot be encoded
+            exchange.close();
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        Json.appendString(sb, message);
+        sb.append('}');
+        respond(exchange, status, JSON, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return the bytes of the stream, null if there are more than the limit
+     */
+    private static byte[] readAll(InputStream in, int limit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (bytes.size() + n > limit) {
+                return null;
+            }
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * starts the service
+     * @param args the port, optionally, {@link #DEFAULT_PORT} by default; and the
+     * address to bind to, optionally, the loopback interface by default
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        SimulationServer server = (args.length > 1)
+                ? new SimulationServer(TwoCompartmentInsulin.defaultModel(), new InetSocketAddress(InetAddress.getByName(args[1]), port),
+                        4 * Runtime.getRuntime().availableProcessors())
+                : new SimulationServer(port);
+        server.start();
+        System.out.println("Simulation service listening on " + server.getAddress());
+    }
+}